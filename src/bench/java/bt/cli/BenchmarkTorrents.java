@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.MetadataService;
+import bt.metainfo.Torrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds synthetic torrents for benchmarks.
+ */
+class BenchmarkTorrents {
+
+    /**
+     * Create a single-file torrent with random piece hashes.
+     */
+    static Torrent singleFile(String name, long size, int pieceSize) {
+        int pieceCount = (int) ((size + pieceSize - 1) / pieceSize);
+        byte[] pieces = new byte[pieceCount * 20];
+        new Random(42).nextBytes(pieces);
+
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("length", size);
+        info.put("name", name);
+        info.put("piece length", pieceSize);
+        info.put("pieces", pieces);
+        Map<String, Object> metainfo = new LinkedHashMap<>();
+        metainfo.put("info", info);
+
+        return new MetadataService().fromByteArray(BencodeWriter.encode(metainfo));
+    }
+}
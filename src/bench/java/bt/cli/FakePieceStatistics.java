@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.torrent.PieceStatistics;
+
+import java.util.Random;
+
+/**
+ * Piece availability in a swarm, where each peer has a random fraction of the torrent.
+ */
+class FakePieceStatistics implements PieceStatistics {
+
+    private final int[] counts;
+
+    FakePieceStatistics(int piecesTotal, int peerCount, long seed) {
+        this.counts = new int[piecesTotal];
+        Random random = new Random(seed);
+        for (int peer = 0; peer < peerCount; peer++) {
+            // mix of seeds and leechers at various stages
+            double completeness = random.nextDouble();
+            for (int i = 0; i < piecesTotal; i++) {
+                if (random.nextDouble() < completeness) {
+                    counts[i]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getCount(int pieceIndex) {
+        return counts[pieceIndex];
+    }
+
+    @Override
+    public int getPiecesTotal() {
+        return counts.length;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.net.Peer;
+import bt.torrent.TorrentSessionState;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Session state with fixed piece counts and mutable transfer counters.
+ */
+class FakeSessionState implements TorrentSessionState {
+
+    private final int piecesTotal;
+    private volatile int piecesComplete;
+    private volatile long downloaded;
+    private volatile long uploaded;
+
+    FakeSessionState(int piecesTotal) {
+        this.piecesTotal = piecesTotal;
+    }
+
+    /**
+     * Simulate transfer of some data.
+     */
+    void advance(long downloadedDelta, long uploadedDelta, int piecesCompleteDelta) {
+        this.downloaded += downloadedDelta;
+        this.uploaded += uploadedDelta;
+        this.piecesComplete = Math.min(piecesTotal, piecesComplete + piecesCompleteDelta);
+    }
+
+    @Override
+    public int getPiecesTotal() {
+        return piecesTotal;
+    }
+
+    @Override
+    public int getPiecesComplete() {
+        return piecesComplete;
+    }
+
+    @Override
+    public int getPiecesIncomplete() {
+        return piecesTotal - piecesComplete;
+    }
+
+    @Override
+    public int getPiecesRemaining() {
+        return piecesTotal - piecesComplete;
+    }
+
+    @Override
+    public int getPiecesSkipped() {
+        return 0;
+    }
+
+    @Override
+    public int getPiecesNotSkipped() {
+        return piecesTotal;
+    }
+
+    @Override
+    public long getDownloaded() {
+        return downloaded;
+    }
+
+    @Override
+    public long getUploaded() {
+        return uploaded;
+    }
+
+    @Override
+    public Set<Peer> getConnectedPeers() {
+        return Collections.emptySet();
+    }
+}
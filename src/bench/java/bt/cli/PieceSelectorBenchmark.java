@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.torrent.selector.PieceSelector;
+import bt.torrent.selector.RarestFirstSelector;
+import bt.torrent.selector.SequentialSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection of the next pieces to request, as done by the piece manager on each round.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PieceSelectorBenchmark {
+
+    @Param({"sequential", "rarest", "randomized-rarest", "streaming"})
+    public String selectorType;
+
+    @Param({"1000", "20000"})
+    public int piecesTotal;
+
+    // number of pieces consumed from the selector per call
+    @Param({"10"})
+    public int limit;
+
+    private PieceSelector selector;
+    private FakePieceStatistics statistics;
+
+    @Setup
+    public void setup() {
+        statistics = new FakePieceStatistics(piecesTotal, 50, 42);
+        switch (selectorType) {
+            case "sequential": {
+                selector = SequentialSelector.sequential();
+                break;
+            }
+            case "rarest": {
+                selector = RarestFirstSelector.rarest();
+                break;
+            }
+            case "randomized-rarest": {
+                selector = RarestFirstSelector.randomizedRarest();
+                break;
+            }
+            case "streaming": {
+                selector = new StreamingSelector(16, Optional::empty);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown selector type: " + selectorType);
+            }
+        }
+    }
+
+    @Benchmark
+    public int getNextPieces() {
+        return selector.getNextPieces(statistics).limit(limit).sum();
+    }
+}
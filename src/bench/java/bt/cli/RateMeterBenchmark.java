@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate smoothing and ETA calculation, as done for each status line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RateMeterBenchmark {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private RateMeter meter;
+    private long total;
+    private long now;
+
+    @Setup
+    public void setup() {
+        meter = new RateMeter();
+        total = 0;
+        now = System.nanoTime();
+        meter.update(total, now);
+    }
+
+    @Benchmark
+    public double update() {
+        total += 3 * 1024 * 1024 + 17;
+        now += TICK_NANOS;
+        meter.update(total, now);
+        return meter.getRate(RateMeter.Window.TEN_SECONDS);
+    }
+
+    @Benchmark
+    public int remainingTime() {
+        double rate = meter.getRate(RateMeter.Window.TEN_SECONDS);
+        return SessionStatePrinter.getRemainingTime(1 << 20, rate, 512);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of a single status line.
+ *
+ * Run with {@code -prof gc}: steady-state {@code gc.alloc.rate.norm} is expected to be (close to) 0 B/op.
+ * {@link #main(String[])} checks this and is run by {@code mvn verify -Pbench}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatusRenderingBenchmark {
+
+    // leaves room for measurement noise, but not for a single allocated object per tick
+    private static final double MAX_ALLOCATION_PER_OP = 1.0;
+
+    private SessionStatePrinter printer;
+    private SessionStatePrinter jsonPrinter;
+    private FakeSessionState sessionState;
+
+    @Setup
+    public void setup() {
+        PrintStream nullStream = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        printer = new SessionStatePrinter("[1] ", nullStream);
+        printer.addDetail(out -> out.append(", Open files: ").append(42));
+        printer.onTorrentFetched(BenchmarkTorrents.singleFile("benchmark.bin", 1L << 30, 1 << 20));
+        printer.onFilesChosen();
+
+        jsonPrinter = new SessionStatePrinter("", nullStream, Options.OutputFormat.JSON, 1);
+        jsonPrinter.onTorrentFetched(BenchmarkTorrents.singleFile("benchmark.bin", 1L << 30, 1 << 20));
+        jsonPrinter.onFilesChosen();
+
+        sessionState = new FakeSessionState(1024);
+        printer.updateState(sessionState);
+        jsonPrinter.updateState(sessionState);
+    }
+
+    @Benchmark
+    public void renderDownloading() {
+        sessionState.advance(3 * 1024 * 1024 + 17, 512 * 1024, 1);
+        printer.tick();
+    }
+
+    @Benchmark
+    public void renderJson() {
+        sessionState.advance(3 * 1024 * 1024 + 17, 512 * 1024, 1);
+        jsonPrinter.tick();
+    }
+
+    /**
+     * Run the benchmarks with the GC profiler and exit with a non-zero code, if rendering allocates.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(StatusRenderingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+
+        boolean allocates = false;
+        for (RunResult result : results) {
+            Result allocation = result.getSecondaryResults().get("\u00B7gc.alloc.rate.norm");
+            System.out.println(String.format("%s: %.3f B/op", result.getParams().getBenchmark(), allocation.getScore()));
+            if (allocation.getScore() > MAX_ALLOCATION_PER_OP) {
+                allocates = true;
+            }
+        }
+        if (allocates) {
+            System.err.println("Status rendering allocates more than " + MAX_ALLOCATION_PER_OP + " B/op");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.data.file.FileSystemStorage;
+import bt.metainfo.Torrent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Block reads and writes at random block-aligned offsets through each of the storage implementations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StorageBenchmark {
+
+    private static final long FILE_SIZE = 256L * 1024 * 1024;
+    private static final int PIECE_SIZE = 1 << 20;
+
+    @Param({"file", "pooled", "mmap", "coalescing", "cached"})
+    public String storageType;
+
+    @Param({"16384"})
+    public int blockSize;
+
+    private Path directory;
+    private ChannelPool channelPool;
+    private StorageUnit unit;
+    private ByteBuffer block;
+    private Random random;
+    private long blockCount;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("bt-storage-benchmark");
+        Storage storage;
+        switch (storageType) {
+            case "file": {
+                storage = new FileSystemStorage(directory);
+                break;
+            }
+            case "pooled": {
+                channelPool = new ChannelPool(16);
+                storage = new PooledFileStorage(directory, channelPool);
+                break;
+            }
+            case "mmap": {
+                storage = new MappedStorage(directory, 64 * 1024 * 1024);
+                break;
+            }
+            case "coalescing": {
+                // random offsets rarely complete a piece, so this mostly measures forced flushes
+                storage = new CoalescingStorage(new FileSystemStorage(directory), 64 * 1024 * 1024, torrent -> {});
+                break;
+            }
+            case "cached": {
+                // large enough to hold the whole file, so that reads are served from memory after warm-up
+                storage = new ReadCacheStorage(new FileSystemStorage(directory), FILE_SIZE);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown storage type: " + storageType);
+            }
+        }
+
+        Torrent torrent = BenchmarkTorrents.singleFile("benchmark.bin", FILE_SIZE, PIECE_SIZE);
+        unit = storage.getUnit(torrent, torrent.getFiles().get(0));
+        block = ByteBuffer.allocateDirect(blockSize);
+        random = new Random(42);
+        blockCount = FILE_SIZE / blockSize;
+
+        byte[] data = new byte[blockSize];
+        random.nextBytes(data);
+        block.put(data);
+
+        // fill the whole file, so that reads hit actual data
+        for (long offset = 0; offset < FILE_SIZE; offset += blockSize) {
+            block.clear();
+            unit.writeBlock(block, offset);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        unit.close();
+        if (channelPool != null) {
+            channelPool.closeAll();
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int writeBlock() {
+        block.clear();
+        return unit.writeBlock(block, nextOffset());
+    }
+
+    @Benchmark
+    public int readBlock() {
+        block.clear();
+        return unit.readBlock(block, nextOffset());
+    }
+
+    private long nextOffset() {
+        return (long) (random.nextDouble() * blockCount) * blockSize;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.Bt;
+import bt.metainfo.MetadataService;
+import bt.metainfo.TorrentId;
+import bt.net.InetPeer;
+import bt.net.Peer;
+import bt.peer.IPeerRegistry;
+import bt.runtime.BtClient;
+import bt.runtime.BtRuntime;
+import bt.runtime.BtRuntimeBuilder;
+import bt.runtime.Config;
+import bt.service.IRuntimeLifecycleBinder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end throughput test: one seeder and several leechers, each with its own runtime,
+ * exchange a generated torrent over the loopback interface. DHT is disabled, and peers are
+ * introduced to each other directly.
+ *
+ * Harness parameters are passed as system properties ({@code leechers}, {@code sizeMb}, {@code basePort});
+ * arguments are client options, e.g. {@code --block-size} or {@code --storage}, and are applied
+ * to every runtime the same way as {@link CliClient} does:
+ *
+ * <pre>
+ * java -Dleechers=4 -DsizeMb=4096 -cp target/bt-benchmarks.jar bt.cli.SwarmHarness --storage mmap
+ * </pre>
+ */
+public class SwarmHarness {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private static class Node {
+        private final int port;
+        private final BtRuntime runtime;
+        private final BtClient client;
+
+        Node(int port, BtRuntime runtime, BtClient client) {
+            this.port = port;
+            this.runtime = runtime;
+            this.client = client;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int leecherCount = Integer.getInteger("leechers", 4);
+        long size = Long.getLong("sizeMb", 2048) * 1024 * 1024;
+        int basePort = Integer.getInteger("basePort", 6900);
+
+        Path workDirectory = Files.createTempDirectory("bt-swarm");
+        try {
+            run(workDirectory, leecherCount, size, basePort, args);
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(Path workDirectory, int leecherCount, long size, int basePort, String[] args) throws Exception {
+        Path seederDirectory = Files.createDirectories(workDirectory.resolve("seeder"));
+        Path data = seederDirectory.resolve("swarm.bin");
+        System.out.println(String.format("Generating %,d B of data...", size));
+        generate(data, size);
+
+        TorrentCreator creator = new TorrentCreator(data, null, Runtime.getRuntime().availableProcessors());
+        Path metainfoFile = workDirectory.resolve("swarm.torrent");
+        Files.write(metainfoFile, TorrentCreator.createMetainfo(creator.createInfo(false), null));
+        URL metainfoUrl = metainfoFile.toUri().toURL();
+        TorrentId torrentId = new MetadataService().fromUrl(metainfoUrl).getTorrentId();
+
+        List<Node> leechers = new ArrayList<>();
+        CountDownLatch seederReady = new CountDownLatch(1);
+        CountDownLatch leechersDone = new CountDownLatch(leecherCount);
+
+        Node seeder = createNode(seederDirectory, basePort, metainfoUrl, args);
+        seeder.client.startAsync(state -> {
+            if (state.getPiecesRemaining() == 0) {
+                seederReady.countDown();
+            }
+        }, 1000);
+        seederReady.await();
+
+        long startedNanos = System.nanoTime();
+        long startedCpuNanos = getProcessCpuTime();
+        long startedAllocated = getAllocatedBytes();
+
+        List<Node> allNodes = new ArrayList<>();
+        allNodes.add(seeder);
+        for (int i = 1; i <= leecherCount; i++) {
+            Path directory = Files.createDirectories(workDirectory.resolve("leecher-" + i));
+            leechers.add(createNode(directory, basePort + i, metainfoUrl, args));
+        }
+        allNodes.addAll(leechers);
+
+        for (Node leecher : leechers) {
+            leecher.client.startAsync(state -> {
+                introducePeers(leecher, torrentId, allNodes);
+                if (state.getPiecesRemaining() == 0) {
+                    leechersDone.countDown();
+                    leecher.client.stop();
+                }
+            }, 1000);
+        }
+        leechersDone.await();
+
+        long elapsedNanos = System.nanoTime() - startedNanos;
+        long cpuNanos = getProcessCpuTime() - startedCpuNanos;
+        long allocated = getAllocatedBytes() - startedAllocated;
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        allNodes.forEach(node -> node.runtime.shutdown());
+
+        System.out.println(String.format("Leechers: %d, elapsed: %.1f s", leecherCount, elapsedSeconds));
+        System.out.println(String.format("Aggregate download rate: %.1f MB/s",
+                (double) size * leecherCount / (1 << 20) / elapsedSeconds));
+        System.out.println(String.format("CPU: %.1f s (%.0f%% of one core)",
+                cpuNanos / 1e9, cpuNanos / (double) elapsedNanos * 100));
+        System.out.println(String.format("Allocation rate: %.1f MB/s", allocated / (double) (1 << 20) / elapsedSeconds));
+    }
+
+    private static Node createNode(Path directory, int port, URL metainfoUrl, String[] args) {
+        List<String> nodeArgs = new ArrayList<>(Arrays.asList(args));
+        nodeArgs.addAll(Arrays.asList("-d", directory.toString(), "-i", LOOPBACK.getHostAddress(), "-p", String.valueOf(port)));
+        Options options = Options.parse(nodeArgs.toArray(new String[0]));
+
+        Config config = CliClient.buildConfig(options);
+        // no DHT and no other auto-loaded modules, peers are introduced directly
+        BtRuntimeBuilder runtimeBuilder = BtRuntime.builder(config).disableAutomaticShutdown();
+        CliClient.buildBandwidthLimiter(options)
+                .ifPresent(limiter -> runtimeBuilder.module(new BandwidthModule(limiter)));
+        BtRuntime runtime = runtimeBuilder.build();
+
+        BtClient client = Bt.client(runtime)
+                .storage(CliClient.buildStorage(options, runtime.service(IRuntimeLifecycleBinder.class),
+                        detail -> {}, torrent -> {}))
+                .torrent(metainfoUrl)
+                .build();
+        return new Node(port, runtime, client);
+    }
+
+    private static void introducePeers(Node node, TorrentId torrentId, List<Node> allNodes) {
+        IPeerRegistry peerRegistry = node.runtime.service(IPeerRegistry.class);
+        for (Node other : allNodes) {
+            if (other != node) {
+                Peer peer = new InetPeer(LOOPBACK, other.port);
+                peerRegistry.addPeer(torrentId, peer);
+            }
+        }
+    }
+
+    private static void generate(Path file, long size) throws IOException {
+        byte[] chunk = new byte[1 << 20];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    private static long getProcessCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    // approximation: only counts threads, that are alive at the time of the call
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
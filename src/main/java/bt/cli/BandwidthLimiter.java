@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.TorrentId;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global and per-torrent upload and download limits.
+ */
+class BandwidthLimiter {
+
+    enum Direction {
+        UPLOAD, DOWNLOAD
+    }
+
+    /**
+     * Limits in bytes per second; null means unlimited.
+     */
+    static class Limits {
+        private final Long upload;
+        private final Long download;
+
+        Limits(Long upload, Long download) {
+            this.upload = upload;
+            this.download = download;
+        }
+
+        Long get(Direction direction) {
+            return (direction == Direction.UPLOAD) ? upload : download;
+        }
+
+        boolean isUnlimited() {
+            return upload == null && download == null;
+        }
+    }
+
+    private final Limits perTorrentLimits;
+    private final long burstSeconds;
+    private final TokenBucket[] globalBuckets;
+    private final Map<TorrentId, TokenBucket[]> torrentBuckets;
+
+    /**
+     * @param burstSeconds How many seconds worth of traffic may be sent at once after a period of inactivity
+     */
+    BandwidthLimiter(Limits globalLimits, Limits perTorrentLimits, long burstSeconds) {
+        this.perTorrentLimits = perTorrentLimits;
+        this.burstSeconds = burstSeconds;
+        this.globalBuckets = createBuckets(globalLimits);
+        this.torrentBuckets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Take tokens for a message, if both the global and the torrent's buckets allow it.
+     *
+     * @param torrentId Torrent ID or null, if not known yet; only the global limit applies to such messages,
+     *                  unless there is a per-torrent limit, in which case they are held back
+     * @return true if the message may be sent now
+     */
+    boolean tryAcquire(TorrentId torrentId, Direction direction, long bytes) {
+        if (torrentId == null && perTorrentLimits.get(direction) != null) {
+            // hold the message back until the torrent is known, rather than bypass its limit
+            return false;
+        }
+        long now = System.nanoTime();
+        TokenBucket global = globalBuckets[direction.ordinal()];
+        TokenBucket torrent = (torrentId == null || perTorrentLimits.isUnlimited()) ? null
+                : torrentBuckets.computeIfAbsent(torrentId, id -> createBuckets(perTorrentLimits))[direction.ordinal()];
+
+        if ((global != null && !global.hasTokens(bytes, now)) || (torrent != null && !torrent.hasTokens(bytes, now))) {
+            return false;
+        }
+        if (global != null) {
+            global.take(bytes, now);
+        }
+        if (torrent != null) {
+            torrent.take(bytes, now);
+        }
+        return true;
+    }
+
+    private TokenBucket[] createBuckets(Limits limits) {
+        TokenBucket[] buckets = new TokenBucket[Direction.values().length];
+        for (Direction direction : Direction.values()) {
+            Long rate = limits.get(direction);
+            if (rate != null) {
+                buckets[direction.ordinal()] = new TokenBucket(rate, rate * burstSeconds);
+            }
+        }
+        return buckets;
+    }
+}
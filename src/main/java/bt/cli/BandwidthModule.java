@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.net.IMessageDispatcher;
+import bt.net.IPeerConnectionPool;
+import bt.net.MessageDispatcher;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+
+/**
+ * Wraps the standard message dispatcher with {@link ThrottlingMessageDispatcher}.
+ */
+class BandwidthModule extends AbstractModule {
+
+    private final BandwidthLimiter limiter;
+
+    BandwidthModule(BandwidthLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected void configure() {
+        // nothing to bind; see provider methods
+    }
+
+    @Provides
+    @Singleton
+    public IMessageDispatcher provideMessageDispatcher(MessageDispatcher dispatcher, IPeerConnectionPool connectionPool) {
+        return new ThrottlingMessageDispatcher(dispatcher, connectionPool, limiter);
+    }
+}
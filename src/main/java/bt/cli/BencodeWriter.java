@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal bencode encoder.
+ *
+ * Supported types: {@link Map} with {@link String} keys (encoded in the order of their UTF-8 bytes), {@link List},
+ * {@link String} (encoded in UTF-8), {@code byte[]}, {@link Integer}, {@link Long}
+ * and {@link Raw} for values, that are already encoded.
+ */
+class BencodeWriter {
+
+    /**
+     * Bencoded value, that is written as is.
+     */
+    static class Raw {
+        private final byte[] bytes;
+
+        Raw(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    // BEP 3: keys are sorted as raw strings, i.e. by unsigned bytes rather than by UTF-16 code units
+    private static final Comparator<byte[]> KEY_ORDER = (a, b) -> {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    static byte[] encode(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(value, out);
+        return out.toByteArray();
+    }
+
+    private static void write(Object value, ByteArrayOutputStream out) {
+        if (value instanceof Map) {
+            out.write('d');
+            Map<byte[], Object> sorted = new TreeMap<>(KEY_ORDER);
+            toStringMap((Map<?, ?>) value).forEach((k, v) -> sorted.put(k.getBytes(StandardCharsets.UTF_8), v));
+            sorted.forEach((k, v) -> {
+                writeBytes(k, out);
+                write(v, out);
+            });
+            out.write('e');
+        } else if (value instanceof List) {
+            out.write('l');
+            ((List<?>) value).forEach(element -> write(element, out));
+            out.write('e');
+        } else if (value instanceof String) {
+            writeBytes(((String) value).getBytes(StandardCharsets.UTF_8), out);
+        } else if (value instanceof byte[]) {
+            writeBytes((byte[]) value, out);
+        } else if (value instanceof Raw) {
+            byte[] bytes = ((Raw) value).bytes;
+            out.write(bytes, 0, bytes.length);
+        } else if (value instanceof Integer || value instanceof Long) {
+            writeAscii("i" + value + "e", out);
+        } else {
+            throw new IllegalArgumentException("Unsupported type: " + (value == null ? null : value.getClass().getName()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> toStringMap(Map<?, ?> map) {
+        map.keySet().forEach(key -> {
+            if (!(key instanceof String)) {
+                throw new IllegalArgumentException("Dictionary keys must be strings: " + key);
+            }
+        });
+        return (Map<String, ?>) map;
+    }
+
+    private static void writeBytes(byte[] bytes, ByteArrayOutputStream out) {
+        writeAscii(bytes.length + ":", out);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeAscii(String s, ByteArrayOutputStream out) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded pool of open file channels with LRU eviction.
+ *
+ * Channels are leased for the duration of a single read or write and are never closed while leased,
+ * so the pool may temporarily exceed its size, if all channels are in use at the same time.
+ */
+class ChannelPool implements StatusDetail {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelPool.class);
+
+    private static class Entry {
+        private final FileChannel channel;
+        private int leases;
+
+        Entry(FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final int maxOpenChannels;
+    private final LinkedHashMap<Path, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ChannelPool(int maxOpenChannels) {
+        if (maxOpenChannels < 1) {
+            throw new IllegalArgumentException("Invalid number of open files: " + maxOpenChannels + "; expected 1 or more");
+        }
+        this.maxOpenChannels = maxOpenChannels;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+    }
+
+    /**
+     * Get an open channel for the file, creating the file if it does not exist.
+     * Each call must be followed by {@link #release(Path)}.
+     */
+    synchronized FileChannel acquire(Path file) throws IOException {
+        return acquire(file, true);
+    }
+
+    /**
+     * Get an open channel for the file.
+     * Each call, that returns a channel, must be followed by {@link #release(Path)}.
+     *
+     * @param create Create the file, if it does not exist
+     * @return Channel or null, if the file does not exist and {@code create} is false
+     */
+    synchronized FileChannel acquire(Path file, boolean create) throws IOException {
+        Entry entry = entries.get(file);
+        if (entry != null) {
+            hits++;
+        } else {
+            if (!create && !Files.exists(file)) {
+                return null;
+            }
+            misses++;
+            entry = new Entry(open(file, create));
+            entries.put(file, entry);
+            evictIdle();
+        }
+        entry.leases++;
+        return entry.channel;
+    }
+
+    synchronized void release(Path file) {
+        Entry entry = entries.get(file);
+        if (entry != null && --entry.leases == 0) {
+            evictIdle();
+        }
+    }
+
+    /**
+     * Close the file's channel, unless it's currently leased.
+     */
+    synchronized void close(Path file) {
+        Entry entry = entries.get(file);
+        if (entry != null && entry.leases == 0) {
+            entries.remove(file);
+            closeChannel(file, entry.channel);
+        }
+    }
+
+    synchronized void closeAll() {
+        entries.forEach((file, entry) -> closeChannel(file, entry.channel));
+        entries.clear();
+    }
+
+    private void evictIdle() {
+        Iterator<Map.Entry<Path, Entry>> iter = entries.entrySet().iterator();
+        while (entries.size() > maxOpenChannels && iter.hasNext()) {
+            Map.Entry<Path, Entry> e = iter.next();
+            if (e.getValue().leases == 0) {
+                iter.remove();
+                closeChannel(e.getKey(), e.getValue().channel);
+                evictions++;
+            }
+        }
+    }
+
+    private static FileChannel open(Path file, boolean create) throws IOException {
+        if (!create) {
+            // opened for writing as well, so that the channel can be reused for subsequent writes
+            return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void closeChannel(Path file, FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close file: " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void appendTo(StringBuilder out) {
+        out.append(", Open files: ").append(entries.size())
+                .append(" (hits: ").append(hits)
+                .append(", misses: ").append(misses)
+                .append(", evictions: ").append(evictions)
+                .append(')');
+    }
+}
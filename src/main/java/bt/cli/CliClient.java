@@ -18,15 +18,25 @@ package bt.cli;
 
 import bt.Bt;
 import bt.BtClientBuilder;
+import bt.data.Bitfield;
+import bt.data.DataDescriptor;
 import bt.data.Storage;
 import bt.data.file.FileSystemStorage;
 import bt.dht.DHTConfig;
 import bt.dht.DHTModule;
+import bt.dht.DHTService;
+import bt.metainfo.MetadataService;
+import bt.metainfo.Torrent;
+import bt.net.InetPeerAddress;
 import bt.protocol.crypto.EncryptionPolicy;
 import bt.runtime.BtClient;
 import bt.runtime.BtRuntime;
+import bt.runtime.BtRuntimeBuilder;
 import bt.runtime.Config;
 import bt.service.IRuntimeLifecycleBinder;
+import bt.torrent.TorrentDescriptor;
+import bt.torrent.TorrentRegistry;
+import bt.torrent.fileselector.TorrentFileSelector;
 import bt.torrent.selector.PieceSelector;
 import bt.torrent.selector.RarestFirstSelector;
 import bt.torrent.selector.SequentialSelector;
@@ -40,18 +50,49 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Security;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class CliClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(CliClient.class);
 
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    // used, when file storage has to be pooled, but the limit has not been specified
+    private static final int DEFAULT_MAX_OPEN_FILES = 1024;
+
+    // length prefix, message ID, piece index and offset
+    private static final int PIECE_MESSAGE_HEADER_SIZE = 13;
+
+    // number of pieces to download in order ahead of the piped or served data, unless specified explicitly
+    private static final int DEFAULT_STREAMING_WINDOW = 16;
+
+    // location of resume data and caches inside the target directory
+    private static final String STATE_DIRECTORY_NAME = ".bt";
+
     public static void main(String[] args) throws IOException {
         Options options;
         try {
@@ -59,16 +100,108 @@ public class CliClient {
         } catch (OptionException e) {
             Options.printHelp(System.out);
             return;
+        } catch (IllegalArgumentException e) {
+            // invalid option values
+            exitWithUsage(e.getMessage());
+            return;
+        }
+
+        if (options.getControlCommand() != null) {
+            sendControlCommand(options);
+            return;
+        } else if (options.getCreateSource() != null) {
+            createTorrent(options);
+            return;
+        } else if (options.getTargetDirectory() == null) {
+            Options.printHelp(System.out);
+            return;
+        } else if (options.shouldVerify() && options.getMetainfoFiles().size() != 1) {
+            exitWithUsage("Exactly one torrent file is required for verification");
         }
 
         configureLogging(options.getLogLevel());
         configureSecurity();
         registerLog4jShutdownHook();
 
-        CliClient client = new CliClient(options);
+        if (options.shouldVerify()) {
+            verify(options);
+            return;
+        }
+
+        CliClient client;
+        try {
+            client = new CliClient(options);
+        } catch (IllegalArgumentException e) {
+            // invalid file selection rules or option combinations
+            exitWithUsage(e.getMessage());
+            return;
+        }
         client.start();
     }
 
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        Options.printHelp(System.err);
+        System.exit(2);
+    }
+
+    private static void verify(Options options) {
+        Torrent torrent = new MetadataService().fromUrl(toUrl(options.getMetainfoFiles().get(0)));
+        DataVerifier verifier = new DataVerifier(torrent, options.getTargetDirectory().toPath(),
+                Runtime.getRuntime().availableProcessors());
+
+        boolean success;
+        try {
+            success = verifier.report(verifier.verify(), System.out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            success = false;
+        }
+        System.exit(success ? 0 : 1);
+    }
+
+    private static void createTorrent(Options options) throws IOException {
+        Path source = options.getCreateSource().toPath().toAbsolutePath().normalize();
+        Path target = (options.getCreateOutput() == null)
+                ? Paths.get(source.getFileName() + ".torrent") : options.getCreateOutput().toPath();
+
+        TorrentCreator creator = new TorrentCreator(source, options.getPieceSize(),
+                Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("Hashing %,d B in pieces of %,d B...", creator.getTotalSize(), creator.getPieceSize()));
+
+        byte[] info;
+        try {
+            info = creator.createInfo(options.isPrivateTorrent());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+            return;
+        }
+        Files.write(target, TorrentCreator.createMetainfo(info, options.getAnnounce()));
+        System.out.println("Created " + target + ", info hash: " + Hex.encode(sha1(info)));
+    }
+
+    private static byte[] sha1(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sendControlCommand(Options options) throws IOException {
+        boolean success;
+        try {
+            success = ControlClient.send(options.getControlPort(), options.getControlCommand(), System.out);
+        } catch (ConnectException e) {
+            System.err.println("Daemon is not running on port " + options.getControlPort());
+            success = false;
+        }
+        if (!success) {
+            System.exit(1);
+        }
+    }
+
     private static void configureLogging(Options.LogLevel logLevel) {
         Level log4jLogLevel;
         switch (Objects.requireNonNull(logLevel)) {
@@ -115,51 +248,299 @@ public class CliClient {
     }
 
     private final Options options;
-    private final SessionStatePrinter printer;
-    private final BtClient client;
+    private final BtRuntime runtime;
+    private final Storage storage;
+    private final List<StatusDetail> statusDetails;
+    private final FastResume fastResume;
+    private final MetadataCache metadataCache;
+    private final DhtNodeCache dhtNodeCache;
+    private final TorrentFileSelector fileSelector;
+    private final RuleFileSelector fileRules;
+    private final List<TorrentInput> inputs;
+    private final PrintStream statusOut;
+    private final OutputStream pipeOut;
+
+    private volatile ContentPipe contentPipe;
+    private final AtomicInteger jobIdSequence;
+    // guarded by this
+    private boolean shutdown;
 
     public CliClient(Options options) {
         this.options = options;
-        this.printer = new SessionStatePrinter();
+        this.inputs = TorrentInput.fromOptions(options);
+        this.statusOut = openStatusOutput(options);
+        this.jobIdSequence = new AtomicInteger(1);
+        if (inputs.isEmpty() && !options.runAsDaemon()) {
+            throw new IllegalStateException("Torrent file or magnet URI is required");
+        }
+        if (options.getPipePattern() != null && (inputs.size() != 1 || options.runAsDaemon())) {
+            throw new IllegalArgumentException("Exactly one torrent is required for piping");
+        }
+        this.pipeOut = openPipeOutput(options);
 
         Config config = buildConfig(options);
 
-        BtRuntime runtime = BtRuntime.builder(config)
-                .module(buildDHTModule(options))
+        Path stateDirectory = options.getTargetDirectory().toPath().resolve(STATE_DIRECTORY_NAME);
+        this.dhtNodeCache = new DhtNodeCache(stateDirectory.resolve("dht-nodes"));
+
+        BtRuntimeBuilder runtimeBuilder = BtRuntime.builder(config)
+                .module(buildDHTModule(options, dhtNodeCache.load()));
+
+        buildBandwidthLimiter(options)
+                .ifPresent(limiter -> runtimeBuilder.module(new BandwidthModule(limiter)));
+
+        if (options.useFastResume()) {
+            Path targetDirectory = options.getTargetDirectory().toPath();
+            this.fastResume = new FastResume(targetDirectory, stateDirectory.resolve("resume"));
+            runtimeBuilder.module(new FastResumeModule(fastResume));
+        } else {
+            this.fastResume = null;
+        }
+
+        this.runtime = runtimeBuilder
                 .autoLoadModules()
+                .disableAutomaticShutdown()
                 .build();
 
-        Storage storage = new FileSystemStorage(options.getTargetDirectory().toPath());
-        PieceSelector selector = options.downloadSequentially() ?
-                SequentialSelector.sequential() : RarestFirstSelector.randomizedRarest();
+        this.statusDetails = new ArrayList<>();
+        // verified pieces, that are remembered from the previous run, can't be trusted after partial writes
+        Consumer<Torrent> partialWriteListener = (fastResume == null) ? torrent -> {} : fastResume::invalidate;
+        this.storage = buildStorage(options, runtime.service(IRuntimeLifecycleBinder.class),
+                statusDetails::add, partialWriteListener);
+
+        // registered after the storage's hooks, so that buffered data is on disk
+        // before sizes and modification times of the files are remembered
+        if (fastResume != null) {
+            runtime.service(IRuntimeLifecycleBinder.class).onShutdown(fastResume::save);
+        }
+        runtime.service(IRuntimeLifecycleBinder.class).onShutdown(dhtNodeCache::save);
+        this.metadataCache = new MetadataCache(stateDirectory.resolve("metadata"));
+
+        Optional<RuleFileSelector> ruleFileSelector = RuleFileSelector.fromOptions(options);
+        this.fileRules = ruleFileSelector.orElse(null);
+        if (options.shouldDownloadAllFiles()) {
+            this.fileSelector = null;
+        } else if (ruleFileSelector.isPresent()) {
+            this.fileSelector = ruleFileSelector.get();
+        } else if (!options.runAsDaemon()) {
+            // daemon has no one to ask about which files to download
+            CliFileSelector cliFileSelector = new CliFileSelector();
+            runtime.service(IRuntimeLifecycleBinder.class).onShutdown(cliFileSelector::shutdown);
+            this.fileSelector = cliFileSelector;
+        } else {
+            this.fileSelector = null;
+        }
+    }
+
+    private static PrintStream openStatusOutput(Options options) {
+        File statusFile = options.getStatusFile();
+        if (statusFile == null) {
+            // stdout is reserved for piped contents
+            return (options.getPipePattern() != null && options.getPipeTarget() == null) ? System.err : System.out;
+        }
+        try {
+            // append mode also works for FIFOs
+            return new PrintStream(new FileOutputStream(statusFile, true), false, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to open status file: " + statusFile, e);
+        }
+    }
+
+    private static OutputStream openPipeOutput(Options options) {
+        if (options.getPipePattern() == null) {
+            return null;
+        } else if (options.getPipeTarget() == null) {
+            // bypass System.out, which swallows errors
+            return new FileOutputStream(FileDescriptor.out);
+        }
+        try {
+            // blocks until a reader opens the FIFO
+            return new FileOutputStream(options.getPipeTarget());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to open pipe target: " + options.getPipeTarget(), e);
+        }
+    }
+
+    /**
+     * Build the storage, including the optional write buffer and read cache, and register its shutdown hooks.
+     *
+     * @param statusDetails Receives storage statistics to be appended to the status line
+     * @param partialWriteListener Invoked with the torrent, before incomplete pieces of it are written
+     *                             out of the write buffer to free memory
+     */
+    static Storage buildStorage(Options options, IRuntimeLifecycleBinder lifecycleBinder,
+                                Consumer<StatusDetail> statusDetails, Consumer<Torrent> partialWriteListener) {
+        Path targetDirectory = options.getTargetDirectory().toPath();
+        ChannelPool channelPool = null;
+        Storage storage;
+        switch (options.getStorageType()) {
+            case FILE: {
+                // FileSystemStorage can't preallocate, so the pooled storage is used instead
+                if (options.getMaxOpenFiles() == null && options.getPreallocation() == Options.Preallocation.LAZY) {
+                    storage = new FileSystemStorage(targetDirectory);
+                } else {
+                    int maxOpenFiles = (options.getMaxOpenFiles() == null) ? DEFAULT_MAX_OPEN_FILES : options.getMaxOpenFiles();
+                    channelPool = new ChannelPool(maxOpenFiles);
+                    statusDetails.accept(channelPool);
+                    storage = new PooledFileStorage(targetDirectory, channelPool, options.getPreallocation());
+                }
+                break;
+            }
+            case MMAP: {
+                storage = new MappedStorage(targetDirectory, MAPPED_REGION_SIZE, options.getPreallocation());
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown storage type: " + options.getStorageType().name());
+            }
+        }
+
+        if (options.getWriteBufferSize() != null) {
+            if (options.getWriteBufferSize() <= 0) {
+                throw new IllegalArgumentException("Write buffer size must be positive: " + options.getWriteBufferSize());
+            }
+            CoalescingStorage coalescingStorage = new CoalescingStorage(storage,
+                    options.getWriteBufferSize() * (1L << 20), partialWriteListener);
+            // units are flushed, when torrents are stopped; this covers the ones, that are still open
+            lifecycleBinder.onShutdown(coalescingStorage::flush);
+            statusDetails.accept(coalescingStorage);
+            storage = coalescingStorage;
+        }
+
+        if (options.getReadCacheSize() != null) {
+            if (options.getReadCacheSize() <= 0) {
+                throw new IllegalArgumentException("Read cache size must be positive: " + options.getReadCacheSize());
+            }
+            ReadCacheStorage readCacheStorage = new ReadCacheStorage(storage, options.getReadCacheSize() * (1L << 20));
+            lifecycleBinder.onShutdown(readCacheStorage::shutdown);
+            statusDetails.accept(readCacheStorage);
+            storage = readCacheStorage;
+        }
+
+        // shutdown hooks run in the order of registration, so the files are closed after buffered data is flushed
+        if (channelPool != null) {
+            lifecycleBinder.onShutdown(channelPool::closeAll);
+        }
+        return storage;
+    }
+
+    private BtClient buildClient(TorrentJob job) {
+        Path targetDirectory = options.getTargetDirectory().toPath();
+        ContentPipe contentPipe = null;
+        PieceSelector selector;
+        if (pipeOut != null) {
+            StreamingSelector streamingSelector = buildStreamingSelector(job);
+            contentPipe = new ContentPipe(RuleFileSelector.compilePattern(options.getPipePattern()), pipeOut, storage,
+                    streamingSelector, () -> lookupBitfield(job), options.getPipeLookAhead());
+            this.contentPipe = contentPipe;
+            selector = streamingSelector;
+        } else {
+            selector = buildSelector(job);
+        }
 
         BtClientBuilder clientBuilder = Bt.client(runtime)
                 .storage(storage)
                 .selector(selector);
 
-        if (!options.shouldDownloadAllFiles()) {
-            CliFileSelector fileSelector = new CliFileSelector();
-            clientBuilder.fileSelector(fileSelector);
-            runtime.service(IRuntimeLifecycleBinder.class).onShutdown(fileSelector::shutdown);
+        // skipped files are remembered, so that they are not waited for when requested over HTTP
+        if (contentPipe != null) {
+            clientBuilder.fileSelector(new RecordingFileSelector(contentPipe.getFileSelector(), job::addSkippedFile));
+        } else if (fileSelector != null) {
+            clientBuilder.fileSelector(new RecordingFileSelector(fileSelector, job::addSkippedFile));
         }
 
-        clientBuilder.afterTorrentFetched(printer::onTorrentFetched);
+        SessionStatePrinter printer = job.getPrinter();
+        Consumer<Torrent> torrentFetchedListener = ((Consumer<Torrent>) job::setTorrent).andThen(printer::onTorrentFetched);
+        torrentFetchedListener = torrentFetchedListener.andThen(torrent -> job.getPriorities().init(
+                new TorrentLayout(torrent, targetDirectory),
+                (fileRules == null) ? file -> FilePriorities.Priority.NORMAL : fileRules::getPriority));
+        if (contentPipe != null) {
+            ContentPipe pipe = contentPipe;
+            torrentFetchedListener = torrentFetchedListener.andThen(
+                    torrent -> pipe.onTorrentFetched(torrent, new TorrentLayout(torrent, targetDirectory)));
+        }
+        if (fastResume != null) {
+            torrentFetchedListener = torrentFetchedListener.andThen(fastResume::register);
+        }
+
+        TorrentInput input = job.getInput();
+        if (input.getMetainfoFile() != null) {
+            clientBuilder = clientBuilder.torrent(toUrl(input.getMetainfoFile()));
+        } else {
+            String magnetUri = input.getMagnetUri();
+            Optional<URL> cachedMetainfo = metadataCache.lookup(magnetUri);
+            if (cachedMetainfo.isPresent()) {
+                LOGGER.info("Using cached metadata for magnet link: {}", magnetUri);
+                clientBuilder = clientBuilder.torrent(cachedMetainfo.get());
+            } else {
+                clientBuilder = clientBuilder.magnet(magnetUri);
+                torrentFetchedListener = torrentFetchedListener.andThen(torrent -> metadataCache.store(magnetUri, torrent));
+            }
+        }
+
+        clientBuilder.afterTorrentFetched(torrentFetchedListener);
         clientBuilder.afterFilesChosen(printer::onFilesChosen);
 
-        if (options.getMetainfoFile() != null) {
-            clientBuilder = clientBuilder.torrent(toUrl(options.getMetainfoFile()));
-        } else if (options.getMagnetUri() != null) {
-            clientBuilder = clientBuilder.magnet(options.getMagnetUri());
+        return clientBuilder.build();
+    }
+
+    private PieceSelector buildSelector(TorrentJob job) {
+        if (options.getStreamingWindow() != null || options.getHttpPort() != null) {
+            // HTTP server moves the download position to the requested ranges
+            return buildStreamingSelector(job);
+        } else if (options.downloadSequentially()) {
+            return SequentialSelector.sequential();
+        } else if (options.runAsDaemon() || (fileRules != null && fileRules.hasPriorityRules())) {
+            // priorities may be changed at any time via control interface
+            return new PrioritySelector(job.getPriorities());
         } else {
-            throw new IllegalStateException("Torrent file or magnet URI is required");
+            return RarestFirstSelector.randomizedRarest();
         }
+    }
 
-        this.client = clientBuilder.build();
+    private StreamingSelector buildStreamingSelector(TorrentJob job) {
+        int windowSize = (options.getStreamingWindow() == null) ? DEFAULT_STREAMING_WINDOW : options.getStreamingWindow();
+        StreamingSelector selector = new StreamingSelector(windowSize, () -> lookupBitfield(job));
+        job.setStreamingSelector(selector);
+        return selector;
     }
 
-    private static Config buildConfig(Options options) {
+    private Optional<Bitfield> lookupBitfield(TorrentJob job) {
+        Torrent torrent = job.getTorrent();
+        if (torrent == null) {
+            return Optional.empty();
+        }
+        return runtime.service(TorrentRegistry.class).getDescriptor(torrent.getTorrentId())
+                .map(TorrentDescriptor::getDataDescriptor)
+                .map(DataDescriptor::getBitfield);
+    }
+
+    static Config buildConfig(Options options) {
         Optional<InetAddress> acceptorAddressOverride = getAcceptorAddressOverride(options);
         Optional<Integer> portOverride = tryGetPort(options.getPort());
+        Optional<Integer> maxPeerConnectionsOverride = tryGetInRange(options.getMaxPeerConnections(),
+                "max peer connections", 1, 65535);
+        Optional<Integer> maxPeerConnectionsPerTorrentOverride = tryGetInRange(options.getMaxPeerConnectionsPerTorrent(),
+                "max peer connections per torrent", 1, 65535);
+        Optional<Integer> maxOutstandingRequestsOverride = tryGetInRange(options.getMaxOutstandingRequests(),
+                "max outstanding requests", 1, 4096);
+        Optional<Integer> maxIOQueueSizeOverride = tryGetInRange(options.getMaxIOQueueSize(),
+                "IO queue size", 1, Integer.MAX_VALUE);
+        Optional<Duration> peerDiscoveryIntervalOverride = tryGetInRange(options.getPeerDiscoveryInterval(),
+                "peer discovery interval", 1, 86400).map(Duration::ofSeconds);
+
+        Config defaults = new Config();
+        Optional<Integer> transferBlockSizeOverride = tryGetInRange(options.getTransferBlockSize(),
+                "transfer block size", 1024, (int) defaults.getMaxTransferBlockSize());
+        transferBlockSizeOverride.ifPresent(blockSize -> {
+            if (Integer.bitCount(blockSize) != 1) {
+                throw new IllegalArgumentException("Invalid transfer block size: " + blockSize + "; expected a power of 2");
+            }
+        });
+        long transferBlockSize = transferBlockSizeOverride.map(Integer::longValue).orElse(defaults.getTransferBlockSize());
+        // buffer must be able to hold at least one piece message, i.e. the block and the message header
+        Optional<Integer> networkBufferSizeOverride = tryGetInRange(options.getNetworkBufferSize(),
+                "network buffer size", (int) transferBlockSize + PIECE_MESSAGE_HEADER_SIZE, Integer.MAX_VALUE);
 
         return new Config() {
             @Override
@@ -181,9 +562,72 @@ public class CliClient {
             public EncryptionPolicy getEncryptionPolicy() {
                 return options.enforceEncryption()? EncryptionPolicy.REQUIRE_ENCRYPTED : EncryptionPolicy.PREFER_PLAINTEXT;
             }
+
+            @Override
+            public int getMaxPeerConnections() {
+                return maxPeerConnectionsOverride.orElseGet(super::getMaxPeerConnections);
+            }
+
+            @Override
+            public int getMaxPeerConnectionsPerTorrent() {
+                return maxPeerConnectionsPerTorrentOverride.orElseGet(super::getMaxPeerConnectionsPerTorrent);
+            }
+
+            @Override
+            public long getTransferBlockSize() {
+                return transferBlockSizeOverride.map(Integer::longValue).orElseGet(super::getTransferBlockSize);
+            }
+
+            @Override
+            public int getMaxOutstandingRequests() {
+                return maxOutstandingRequestsOverride.orElseGet(super::getMaxOutstandingRequests);
+            }
+
+            @Override
+            public int getNetworkBufferSize() {
+                return networkBufferSizeOverride.orElseGet(super::getNetworkBufferSize);
+            }
+
+            @Override
+            public int getMaxIOQueueSize() {
+                return maxIOQueueSizeOverride.orElseGet(super::getMaxIOQueueSize);
+            }
+
+            @Override
+            public Duration getPeerDiscoveryInterval() {
+                return peerDiscoveryIntervalOverride.orElseGet(super::getPeerDiscoveryInterval);
+            }
         };
     }
 
+    static Optional<BandwidthLimiter> buildBandwidthLimiter(Options options) {
+        BandwidthLimiter.Limits globalLimits = new BandwidthLimiter.Limits(
+                tryGetRate(options.getMaxUploadRate()), tryGetRate(options.getMaxDownloadRate()));
+        BandwidthLimiter.Limits perTorrentLimits = new BandwidthLimiter.Limits(
+                tryGetRate(options.getMaxUploadRatePerTorrent()), tryGetRate(options.getMaxDownloadRatePerTorrent()));
+        if (globalLimits.isUnlimited() && perTorrentLimits.isUnlimited()) {
+            return Optional.empty();
+        }
+        int burstSeconds = tryGetInRange(options.getBurstSeconds(), "burst", 1, 3600).get();
+        return Optional.of(new BandwidthLimiter(globalLimits, perTorrentLimits, burstSeconds));
+    }
+
+    // converts KiB/s to B/s
+    private static Long tryGetRate(Integer rate) {
+        return tryGetInRange(rate, "rate limit", 1, Integer.MAX_VALUE)
+                .map(kibs -> kibs * 1024L)
+                .orElse(null);
+    }
+
+    private static Optional<Integer> tryGetInRange(Integer value, String name, int min, int max) {
+        if (value == null) {
+            return Optional.empty();
+        } else if (value < min || value > max) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value + "; expected " + min + ".." + max);
+        }
+        return Optional.of(value);
+    }
+
     private static Optional<Integer> tryGetPort(Integer port) {
         if (port == null) {
             return Optional.empty();
@@ -205,7 +649,19 @@ public class CliClient {
         }
     }
 
-    private static Module buildDHTModule(Options options) {
+    private static InetAddress getMetricsAddress(Options options) {
+        String address = options.getMetricsAddress();
+        if (address == null) {
+            return InetAddress.getLoopbackAddress();
+        }
+        try {
+            return InetAddress.getByName(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Failed to parse the metrics address", e);
+        }
+    }
+
+    private static Module buildDHTModule(Options options, Collection<InetPeerAddress> cachedNodes) {
         Optional<Integer> dhtPortOverride = tryGetPort(options.getDhtPort());
 
         return new DHTModule(new DHTConfig() {
@@ -218,6 +674,14 @@ public class CliClient {
             public boolean shouldUseRouterBootstrap() {
                 return true;
             }
+
+            // nodes from the previous run are contacted right away, instead of waiting for the routers to respond
+            @Override
+            public Collection<InetPeerAddress> getBootstrapNodes() {
+                List<InetPeerAddress> nodes = new ArrayList<>(cachedNodes);
+                nodes.addAll(super.getBootstrapNodes());
+                return nodes;
+            }
         });
     }
 
@@ -229,19 +693,111 @@ public class CliClient {
         }
     }
 
-    private void start() {
-        printer.start();
-        client.startAsync(state -> {
-            boolean complete = (state.getPiecesRemaining() == 0);
-            if (complete) {
-                if (options.shouldSeedAfterDownloaded()) {
-                    printer.onDownloadComplete();
-                } else {
-                    printer.stop();
-                    client.stop();
-                }
+    private void start() throws IOException {
+        TorrentScheduler scheduler = new TorrentScheduler(this::buildClient,
+                options.getMaxActiveTorrents(), options.shouldSeedAfterDownloaded());
+        MetricsServer metricsServer = startMetricsServer(scheduler);
+        HttpRangeServer httpServer = startHttpServer(scheduler);
+
+        // bt's own shutdown hook is disabled, so that the runtime outlives individual clients;
+        // this one makes sure, that the runtime's shutdown hooks (flushing buffers, saving state) run on Ctrl-C as well
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdown();
+            shutdown(metricsServer, httpServer);
+        }, "bt.cli.shutdown"));
+
+        // prefix status lines with job ID, so that output of concurrent downloads can be told apart
+        boolean labelOutput = options.runAsDaemon() || (inputs.size() > 1);
+        inputs.forEach(input -> scheduler.submit(createJob(input, labelOutput)));
+
+        try {
+            if (options.runAsDaemon()) {
+                runDaemon(scheduler);
+            } else {
+                scheduler.awaitTermination();
+                awaitPipe(scheduler);
             }
-            printer.updateState(state);
-        }, 1000).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            shutdown(metricsServer, httpServer);
+        }
+    }
+
+    private MetricsServer startMetricsServer(TorrentScheduler scheduler) throws IOException {
+        Optional<Integer> metricsPort = tryGetPort(options.getMetricsPort());
+        if (!metricsPort.isPresent()) {
+            return null;
+        }
+        MetricsServer metricsServer = new MetricsServer(getMetricsAddress(options), metricsPort.get());
+        scheduler.addStateListener(metricsServer::update);
+        metricsServer.start();
+        return metricsServer;
+    }
+
+    private HttpRangeServer startHttpServer(TorrentScheduler scheduler) throws IOException {
+        Optional<Integer> httpPort = tryGetPort(options.getHttpPort());
+        if (!httpPort.isPresent()) {
+            return null;
+        }
+        HttpRangeServer httpServer = new HttpRangeServer(httpPort.get(), scheduler, storage, this::lookupBitfield,
+                options.getTargetDirectory().toPath());
+        httpServer.start();
+        return httpServer;
+    }
+
+    /**
+     * Stop the servers and the runtime. Invoked both on normal exit and from the JVM shutdown hook;
+     * only the first call has effect, and the other one waits for it to complete.
+     */
+    private synchronized void shutdown(MetricsServer metricsServer, HttpRangeServer httpServer) {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (httpServer != null) {
+            httpServer.stop();
+        }
+        // the routing table is read before the DHT is stopped; the cache is written in a shutdown hook
+        dhtNodeCache.recordRoutingTable(runtime.service(DHTService.class));
+        runtime.shutdown();
+    }
+
+    // let the pipe write out the rest of the data before the runtime shuts down
+    private void awaitPipe(TorrentScheduler scheduler) throws InterruptedException {
+        ContentPipe contentPipe = this.contentPipe;
+        if (contentPipe == null) {
+            return;
+        }
+        boolean complete = scheduler.getJobs().stream()
+                .allMatch(job -> job.getStatus() == TorrentJob.Status.COMPLETE || job.getStatus() == TorrentJob.Status.SEEDING);
+        if (complete) {
+            contentPipe.awaitCompletion();
+        }
+    }
+
+    private TorrentJob createJob(TorrentInput input, boolean labelOutput) {
+        int id = jobIdSequence.getAndIncrement();
+        SessionStatePrinter printer = new SessionStatePrinter(labelOutput ? "[" + id + "] " : "",
+                statusOut, options.getOutputFormat(), id);
+        statusDetails.forEach(printer::addDetail);
+        return new TorrentJob(id, input, printer);
+    }
+
+    private void runDaemon(TorrentScheduler scheduler) throws IOException, InterruptedException {
+        CountDownLatch shutdownLatch = new CountDownLatch(1);
+        ControlServer controlServer = new ControlServer(options.getControlPort(), scheduler,
+                input -> createJob(input, true), shutdownLatch::countDown);
+        controlServer.start();
+        try {
+            shutdownLatch.await();
+        } finally {
+            controlServer.stop();
+            scheduler.shutdown();
+            scheduler.awaitTermination();
+        }
     }
 }
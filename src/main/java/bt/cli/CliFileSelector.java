@@ -38,7 +38,7 @@ public class CliFileSelector extends TorrentFileSelector {
     }
 
     @Override
-    protected SelectionResult select(TorrentFile file) {
+    protected synchronized SelectionResult select(TorrentFile file) {
         while (!shutdown.get()) {
             System.out.println(getPromptMessage(file));
 
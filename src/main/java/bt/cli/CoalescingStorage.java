@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Storage, that collects received blocks of each piece in direct buffers
+ * and writes the piece to the underlying storage at once, when all of its blocks have been received.
+ * When the memory limit is reached, the oldest incomplete pieces are written out as is.
+ *
+ * A piece is written out as soon as it is complete, i.e. before it is verified: the storage is not notified
+ * of verification, and bt reads the piece back through the storage to verify it anyway.
+ * In a multi-file torrent each file's part of the piece is buffered and written separately.
+ */
+class CoalescingStorage implements Storage, StatusDetail {
+
+    private final Storage delegate;
+    private final long memoryLimit;
+    private final Consumer<Torrent> forcedFlushListener;
+
+    // incomplete segments in the order of creation; all access is synchronized on this storage
+    private final Set<CoalescingStorageUnit.Segment> segments;
+    private final Map<Integer, Deque<ByteBuffer>> freeBuffers;
+    private long usedMemory;
+    private long pooledMemory;
+
+    private long pieceFlushes;
+    private long forcedFlushes;
+
+    /**
+     * @param memoryLimit Maximum total size of the buffers in bytes
+     * @param forcedFlushListener Invoked with the torrent, before an incomplete piece of it is written out
+     *                            to free memory
+     */
+    CoalescingStorage(Storage delegate, long memoryLimit, Consumer<Torrent> forcedFlushListener) {
+        this.delegate = delegate;
+        this.memoryLimit = memoryLimit;
+        this.forcedFlushListener = forcedFlushListener;
+        this.segments = new LinkedHashSet<>();
+        this.freeBuffers = new HashMap<>();
+    }
+
+    @Override
+    public StorageUnit getUnit(Torrent torrent, TorrentFile torrentFile) {
+        long fileOffset = 0;
+        for (TorrentFile file : torrent.getFiles()) {
+            if (file == torrentFile) {
+                break;
+            }
+            fileOffset += file.getSize();
+        }
+        return new CoalescingStorageUnit(this, delegate.getUnit(torrent, torrentFile), torrent,
+                fileOffset, torrent.getChunkSize());
+    }
+
+    /**
+     * Write out all pending blocks.
+     */
+    public void flush() {
+        List<CoalescingStorageUnit.Segment> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(segments);
+        }
+        pending.forEach(CoalescingStorageUnit.Segment::flush);
+    }
+
+    /**
+     * Lease a buffer for the segment.
+     * If there is not enough memory left, the oldest segments are added to {@code evicted};
+     * these must be flushed by the caller, after it has released the lock on {@code segment}.
+     *
+     * @return Buffer or null, if the segment is larger than the memory limit
+     */
+    synchronized ByteBuffer acquire(CoalescingStorageUnit.Segment segment, int size,
+                                    List<CoalescingStorageUnit.Segment> evicted) {
+        if (size > memoryLimit) {
+            return null;
+        }
+        while (usedMemory + size > memoryLimit) {
+            CoalescingStorageUnit.Segment oldest = segments.iterator().next();
+            // memory of an evicted segment is accounted as free right away, so the limit may be briefly exceeded
+            // by segments, that are being flushed
+            segments.remove(oldest);
+            usedMemory -= oldest.getCapacity();
+            evicted.add(oldest);
+            forcedFlushes++;
+        }
+        usedMemory += size;
+        segments.add(segment);
+
+        Deque<ByteBuffer> free = freeBuffers.get(size);
+        ByteBuffer buffer = (free == null) ? null : free.pollFirst();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(size);
+        } else {
+            pooledMemory -= size;
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Write out the segments, that have been evicted by {@link #acquire(CoalescingStorageUnit.Segment, int, List)}.
+     */
+    void flushEvicted(List<CoalescingStorageUnit.Segment> evicted) {
+        for (CoalescingStorageUnit.Segment segment : evicted) {
+            forcedFlushListener.accept(segment.getTorrent());
+            segment.flush();
+        }
+    }
+
+    /**
+     * Return the buffer of a flushed segment to the pool.
+     */
+    synchronized void release(CoalescingStorageUnit.Segment segment, ByteBuffer buffer) {
+        int size = buffer.capacity();
+        if (segments.remove(segment)) {
+            usedMemory -= size;
+            pieceFlushes++;
+        }
+        // pooled buffers count towards the limit as well, otherwise pieces of different sizes would accumulate
+        if (usedMemory + pooledMemory + size <= memoryLimit) {
+            freeBuffers.computeIfAbsent(size, it -> new ArrayDeque<>()).addFirst(buffer);
+            pooledMemory += size;
+        }
+    }
+
+    @Override
+    public synchronized void appendTo(StringBuilder out) {
+        out.append(", Write buffer: ").append(usedMemory >> 20).append(" MB")
+                .append(" (pieces: ").append(pieceFlushes)
+                .append(", forced: ").append(forcedFlushes)
+                .append(')');
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage unit, that buffers writes per piece; see {@link CoalescingStorage}.
+ * Reads are served from the buffers as well, so that blocks, that have not been written out yet, can be uploaded.
+ */
+class CoalescingStorageUnit extends DelegatingStorageUnit {
+
+    /**
+     * Part of a piece, that belongs to this file.
+     */
+    class Segment {
+        private final int index;
+        private final long start;
+        private final int length;
+        // received ranges relative to the segment start, merged when adjacent (start -> end)
+        private final TreeMap<Integer, Integer> ranges;
+        private int received;
+        private ByteBuffer buffer;
+        private boolean flushed;
+
+        Segment(int index, long start, int length) {
+            this.index = index;
+            this.start = start;
+            this.length = length;
+            this.ranges = new TreeMap<>();
+        }
+
+        int getCapacity() {
+            return length;
+        }
+
+        Torrent getTorrent() {
+            return torrent;
+        }
+
+        // returns false if the segment has already been flushed, and the block must be written through
+        private synchronized boolean write(ByteBuffer block, int offset, List<Segment> evicted) {
+            if (flushed) {
+                return false;
+            }
+            if (buffer == null) {
+                // sized to the part of the piece, that belongs to this file, so that small files don't waste memory
+                buffer = storage.acquire(this, length, evicted);
+                if (buffer == null) {
+                    flushed = true;
+                    segments.remove(index, this);
+                    return false;
+                }
+            }
+            int end = offset + block.remaining();
+            ByteBuffer target = buffer.duplicate();
+            target.position(offset);
+            target.put(block);
+            addRange(offset, end);
+            if (received == length) {
+                flush();
+            }
+            return true;
+        }
+
+        private void addRange(int from, int to) {
+            Map.Entry<Integer, Integer> before = ranges.floorEntry(from);
+            if (before != null && before.getValue() >= from) {
+                from = before.getKey();
+                to = Math.max(to, before.getValue());
+                ranges.remove(before.getKey());
+                received -= before.getValue() - before.getKey();
+            }
+            Map.Entry<Integer, Integer> after = ranges.ceilingEntry(from);
+            while (after != null && after.getKey() <= to) {
+                to = Math.max(to, after.getValue());
+                ranges.remove(after.getKey());
+                received -= after.getValue() - after.getKey();
+                after = ranges.ceilingEntry(from);
+            }
+            ranges.put(from, to);
+            received += to - from;
+        }
+
+        // returns false if the segment has already been flushed, and the block must be read from the file
+        private synchronized boolean read(ByteBuffer block, int offset) {
+            if (flushed || buffer == null) {
+                return false;
+            }
+            int position = block.position();
+            int end = offset + block.remaining();
+            Map.Entry<Integer, Integer> range = ranges.floorEntry(offset);
+            if (range == null || range.getValue() < end) {
+                // partially received, read what is on disk and then overlay the pending data
+                delegate.readBlock(block.duplicate(), start + offset);
+                for (Map.Entry<Integer, Integer> e : ranges.subMap(0, true, end, false).entrySet()) {
+                    int from = Math.max(offset, e.getKey());
+                    int to = Math.min(end, e.getValue());
+                    if (from < to) {
+                        copy(from, to, block, position + from - offset);
+                    }
+                }
+            } else {
+                copy(offset, end, block, position);
+            }
+            block.position(position + end - offset);
+            return true;
+        }
+
+        private void copy(int from, int to, ByteBuffer block, int position) {
+            ByteBuffer source = buffer.duplicate();
+            source.limit(to).position(from);
+            ByteBuffer target = block.duplicate();
+            target.position(position);
+            target.put(source);
+        }
+
+        /**
+         * Write out received ranges, each with a single call.
+         */
+        synchronized void flush() {
+            if (flushed) {
+                return;
+            }
+            flushed = true;
+            if (buffer != null) {
+                try {
+                    for (Map.Entry<Integer, Integer> e : ranges.entrySet()) {
+                        ByteBuffer source = buffer.duplicate();
+                        source.limit(e.getValue()).position(e.getKey());
+                        delegate.writeBlock(source, start + e.getKey());
+                    }
+                } finally {
+                    storage.release(this, buffer);
+                    buffer = null;
+                    ranges.clear();
+                }
+            }
+            segments.remove(index, this);
+        }
+    }
+
+    private final CoalescingStorage storage;
+    private final Torrent torrent;
+    private final long fileOffset;
+    private final int pieceSize;
+    private final Map<Integer, Segment> segments;
+
+    /**
+     * @param fileOffset Offset of the file in the torrent's data
+     * @param pieceSize Size of the torrent's pieces
+     */
+    CoalescingStorageUnit(CoalescingStorage storage, StorageUnit delegate, Torrent torrent,
+                          long fileOffset, long pieceSize) {
+        super(delegate);
+        this.storage = storage;
+        this.torrent = torrent;
+        this.fileOffset = fileOffset;
+        this.pieceSize = (int) pieceSize;
+        this.segments = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public int readBlock(ByteBuffer buffer, long offset) {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            long position = offset + total;
+            Segment segment = segments.get(getSegmentIndex(position));
+            ByteBuffer block = slice(buffer, position);
+            int length = block.remaining();
+            if (segment == null || !segment.read(block, (int) (position - segment.start))) {
+                int read = delegate.readBlock(block, position);
+                if (read < 0) {
+                    // file does not exist (yet)
+                    return (total == 0) ? -1 : total;
+                } else if (read < length) {
+                    // end of file
+                    buffer.position(buffer.position() + read);
+                    return total + read;
+                }
+            }
+            buffer.position(buffer.position() + length);
+            total += length;
+        }
+        return total;
+    }
+
+    @Override
+    public void readBlock(byte[] buffer, long offset) {
+        readBlock(ByteBuffer.wrap(buffer), offset);
+    }
+
+    @Override
+    public int writeBlock(ByteBuffer buffer, long offset) {
+        List<Segment> evicted = new ArrayList<>(0);
+        int total = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                long position = offset + total;
+                int index = getSegmentIndex(position);
+                Segment segment = segments.computeIfAbsent(index, this::createSegment);
+                ByteBuffer block = slice(buffer, position);
+                int length = block.remaining();
+                if (!segment.write(block, (int) (position - segment.start), evicted)) {
+                    delegate.writeBlock(block, position);
+                }
+                buffer.position(buffer.position() + length);
+                total += length;
+            }
+        } finally {
+            storage.flushEvicted(evicted);
+        }
+        return total;
+    }
+
+    @Override
+    public void writeBlock(byte[] block, long offset) {
+        writeBlock(ByteBuffer.wrap(block), offset);
+    }
+
+    @Override
+    public void close() {
+        try {
+            new ArrayList<>(segments.values()).forEach(Segment::flush);
+        } finally {
+            delegate.close();
+        }
+    }
+
+    private int getSegmentIndex(long position) {
+        return (int) ((fileOffset + position) / pieceSize);
+    }
+
+    private Segment createSegment(int index) {
+        long start = Math.max(0, (long) index * pieceSize - fileOffset);
+        long end = Math.min(capacity(), (long) (index + 1) * pieceSize - fileOffset);
+        return new Segment(index, start, (int) (end - start));
+    }
+
+    // part of the buffer, that belongs to the segment containing the position
+    private ByteBuffer slice(ByteBuffer buffer, long position) {
+        long segmentEnd = (long) (getSegmentIndex(position) + 1) * pieceSize - fileOffset;
+        ByteBuffer block = buffer.duplicate();
+        block.limit((int) Math.min(buffer.limit(), buffer.position() + segmentEnd - position));
+        return block;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+import bt.torrent.fileselector.SelectionResult;
+import bt.torrent.fileselector.TorrentFileSelector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the contents of a single file of the torrent to an output stream (e.g. stdout or a FIFO) in order,
+ * as soon as the pieces, that contain the next range of the file, are verified.
+ *
+ * The piece selector is not allowed to get more than a fixed number of pieces ahead of the data,
+ * that has been written, so a slow consumer slows the download down.
+ */
+class ContentPipe {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentPipe.class);
+
+    private final Pattern filePattern;
+    private final OutputStream out;
+    private final Storage storage;
+    private final StreamingSelector selector;
+    private final Supplier<Optional<Bitfield>> bitfieldSupplier;
+    private final int lookAhead;
+    private final CountDownLatch done;
+
+    private volatile TorrentLayout.FileEntry selectedFile;
+
+    /**
+     * @param filePattern Path of the file inside the torrent (glob or 're:' regex); the first matching file is piped
+     * @param lookAhead Maximum number of pieces to download ahead of the data, that has been written
+     */
+    ContentPipe(Pattern filePattern, OutputStream out, Storage storage, StreamingSelector selector,
+                Supplier<Optional<Bitfield>> bitfieldSupplier, int lookAhead) {
+        if (lookAhead < 1) {
+            throw new IllegalArgumentException("Invalid look-ahead: " + lookAhead + "; expected 1 or more");
+        }
+        this.filePattern = filePattern;
+        this.out = out;
+        this.storage = storage;
+        this.selector = selector;
+        this.bitfieldSupplier = bitfieldSupplier;
+        this.lookAhead = lookAhead;
+        this.done = new CountDownLatch(1);
+    }
+
+    /**
+     * @return Selector, that downloads only the piped file
+     */
+    TorrentFileSelector getFileSelector() {
+        return new TorrentFileSelector() {
+            @Override
+            protected SelectionResult select(TorrentFile file) {
+                TorrentLayout.FileEntry selectedFile = ContentPipe.this.selectedFile;
+                return (selectedFile != null && selectedFile.getFile() == file)
+                        ? SelectionResult.select().build() : SelectionResult.skip();
+            }
+        };
+    }
+
+    /**
+     * Choose the file to pipe and start writing it out.
+     */
+    void onTorrentFetched(Torrent torrent, TorrentLayout layout) {
+        TorrentLayout.FileEntry selectedFile = layout.getFiles().stream()
+                .filter(file -> filePattern.matcher(String.join("/", file.getFile().getPathElements())).matches())
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No file in torrent " + torrent.getName()
+                        + " matches " + filePattern.pattern()));
+        this.selectedFile = selectedFile;
+
+        int firstPiece = selectedFile.getFirstPiece(layout.getPieceSize());
+        selector.seek(firstPiece);
+        selector.setLimit(firstPiece + lookAhead);
+
+        Thread t = new Thread(() -> {
+            try {
+                pipe(torrent, layout, selectedFile);
+            } catch (IOException e) {
+                LOGGER.error("Failed to pipe file: " + selectedFile.getPath(), e);
+                // the consumer is gone, let the download continue at full speed
+                selector.setLimit(Integer.MAX_VALUE);
+            } finally {
+                done.countDown();
+            }
+        }, "bt.cli.content-pipe");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void pipe(Torrent torrent, TorrentLayout layout, TorrentLayout.FileEntry file) throws IOException {
+        VerifiedDataReader reader = new VerifiedDataReader(layout, bitfieldSupplier, () -> false);
+        try (StorageUnit unit = storage.getUnit(torrent, file.getFile())) {
+            // allow the selector to move on, once a piece has been consumed
+            reader.copy(unit, file, 0, file.getSize(), out, piece -> selector.setLimit(piece + 1 + lookAhead));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Wait until the whole file has been written or piping has failed.
+     * Returns immediately, if piping has not been started.
+     */
+    void awaitCompletion() throws InterruptedException {
+        if (selectedFile != null) {
+            done.await();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Sends a single command to the daemon's {@link ControlServer}.
+ */
+class ControlClient {
+
+    /**
+     * @return true if the daemon has accepted the command
+     */
+    static boolean send(int port, String command, PrintStream out) throws IOException {
+        boolean success = false;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            writer.println(resolvePaths(command));
+            writer.flush();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.println(line);
+                success = line.startsWith("OK");
+            }
+        }
+        return success;
+    }
+
+    // daemon may be running in a different working directory
+    private static String resolvePaths(String command) {
+        String prefix = "add ";
+        if (command.startsWith(prefix)) {
+            String argument = command.substring(prefix.length()).trim();
+            if (!argument.isEmpty() && TorrentInput.parse(argument).getMetainfoFile() != null) {
+                return prefix + Paths.get(argument).toAbsolutePath();
+            }
+        }
+        return command;
+    }
+}
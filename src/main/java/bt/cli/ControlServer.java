@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.torrent.TorrentSessionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Accepts commands for the daemon on a loopback TCP port.
+ *
+ * The protocol is line-based: client sends a single command,
+ * server writes the response and closes the connection.
+ *
+ * Supported commands:
+ * <ul>
+ *     <li>{@code add <path to metainfo file or magnet URI>}</li>
+ *     <li>{@code pause <id>}</li>
+ *     <li>{@code resume <id>}</li>
+ *     <li>{@code remove <id>}</li>
+ *     <li>{@code priority <id> <high|normal|low> <pattern>}</li>
+ *     <li>{@code status}</li>
+ *     <li>{@code shutdown}</li>
+ * </ul>
+ */
+class ControlServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ControlServer.class);
+
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+
+    private static final String STATUS_FORMAT = "%4d %-8s %6d/%-6d down: %,d B, up: %,d B, peers: %d, %s";
+
+    private final int port;
+    private final TorrentScheduler scheduler;
+    private final Function<TorrentInput, TorrentJob> jobFactory;
+    private final Runnable shutdownHook;
+
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * @param jobFactory Creates a new job for the torrent, that was added by the client
+     * @param shutdownHook Invoked upon receiving the shutdown command
+     */
+    ControlServer(int port, TorrentScheduler scheduler, Function<TorrentInput, TorrentJob> jobFactory, Runnable shutdownHook) {
+        this.port = port;
+        this.scheduler = scheduler;
+        this.jobFactory = jobFactory;
+        this.shutdownHook = shutdownHook;
+    }
+
+    void start() throws IOException {
+        // never expose the control socket to the outside world
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+        Thread t = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    // commands are served one at a time, so a client, that does not send anything,
+                    // must not block the others
+                    socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                    serve(socket);
+                } catch (SocketTimeoutException e) {
+                    LOGGER.warn("Timed out waiting for control command");
+                } catch (SocketException e) {
+                    // socket has been closed
+                } catch (Exception e) {
+                    LOGGER.error("Failed to process control command", e);
+                }
+            }
+        }, "bt.cli.control-server");
+        t.setDaemon(true);
+        t.start();
+
+        LOGGER.info("Listening for control commands on {}", serverSocket.getLocalSocketAddress());
+    }
+
+    void stop() {
+        ServerSocket serverSocket = this.serverSocket;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close control socket", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+        String line = in.readLine();
+        if (line != null) {
+            try {
+                execute(line.trim(), out);
+            } catch (IllegalArgumentException e) {
+                out.println("ERROR " + e.getMessage());
+            }
+        }
+        out.flush();
+    }
+
+    private void execute(String line, PrintWriter out) {
+        int separator = line.indexOf(' ');
+        String command = (separator < 0) ? line : line.substring(0, separator);
+        String argument = (separator < 0) ? "" : line.substring(separator + 1).trim();
+
+        switch (command) {
+            case "add": {
+                if (argument.isEmpty()) {
+                    throw new IllegalArgumentException("Torrent file or magnet URI is required");
+                }
+                TorrentJob job = jobFactory.apply(TorrentInput.parse(argument));
+                scheduler.submit(job);
+                out.println("OK " + job.getId());
+                break;
+            }
+            case "pause": {
+                respond(scheduler.pause(parseId(argument)), out);
+                break;
+            }
+            case "resume": {
+                respond(scheduler.resume(parseId(argument)), out);
+                break;
+            }
+            case "remove": {
+                respond(scheduler.remove(parseId(argument)), out);
+                break;
+            }
+            case "priority": {
+                String[] parts = argument.split("\\s+", 3);
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Usage: priority <id> <high|normal|low> <pattern>");
+                }
+                TorrentJob job = scheduler.getJob(parseId(parts[0]))
+                        .orElseThrow(() -> new IllegalArgumentException("Unknown job ID: " + parts[0]));
+                FilePriorities.Priority priority = FilePriorities.Priority.parse(parts[1]);
+                try {
+                    out.println("OK " + job.getPriorities().set(RuleFileSelector.compilePattern(parts[2]), priority));
+                } catch (IllegalStateException e) {
+                    out.println("ERROR " + e.getMessage());
+                }
+                break;
+            }
+            case "status": {
+                scheduler.getJobs().forEach(job -> out.println(formatStatus(job)));
+                out.println("OK");
+                break;
+            }
+            case "shutdown": {
+                out.println("OK");
+                shutdownHook.run();
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown command: " + command);
+            }
+        }
+    }
+
+    private static void respond(boolean success, PrintWriter out) {
+        out.println(success ? "OK" : "ERROR Invalid job state");
+    }
+
+    private static int parseId(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid job ID: " + s);
+        }
+    }
+
+    private static String formatStatus(TorrentJob job) {
+        TorrentSessionState state = job.getSessionState();
+        if (state == null) {
+            return String.format(STATUS_FORMAT, job.getId(), job.getStatus(), 0, 0, 0L, 0L, 0, job.getInput());
+        }
+        return String.format(STATUS_FORMAT, job.getId(), job.getStatus(), state.getPiecesComplete(), state.getPiecesTotal(),
+                state.getDownloaded(), state.getUploaded(), state.getConnectedPeers().size(), job.getInput());
+    }
+}
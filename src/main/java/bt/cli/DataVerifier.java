@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.Torrent;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Verifies downloaded data against the torrent's piece hashes without starting a session.
+ *
+ * Pieces are split into contiguous ranges, one per thread, so that each thread reads sequentially.
+ * Files are read via memory-mapped windows.
+ */
+class DataVerifier {
+
+    private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final TorrentLayout layout;
+    private final List<byte[]> hashes;
+    private final int numOfThreads;
+
+    DataVerifier(Torrent torrent, Path rootDirectory, int numOfThreads) {
+        this.layout = new TorrentLayout(torrent, rootDirectory);
+        this.hashes = new ArrayList<>();
+        torrent.getChunkHashes().forEach(hashes::add);
+        this.numOfThreads = numOfThreads;
+    }
+
+    /**
+     * @return Set of valid pieces
+     */
+    BitSet verify() throws InterruptedException {
+        int pieceCount = layout.getPieceCount();
+        if (pieceCount != hashes.size()) {
+            throw new IllegalStateException("Number of hashes (" + hashes.size()
+                    + ") does not match the number of pieces (" + pieceCount + ")");
+        }
+
+        int threads = Math.max(1, Math.min(numOfThreads, pieceCount));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<BitSet>> results = new ArrayList<>();
+            int rangeSize = (pieceCount + threads - 1) / threads;
+            for (int from = 0; from < pieceCount; from += rangeSize) {
+                int to = Math.min(pieceCount, from + rangeSize);
+                int rangeStart = from;
+                results.add(executor.submit(() -> verifyRange(rangeStart, to)));
+            }
+            BitSet valid = new BitSet(pieceCount);
+            for (Future<BitSet> result : results) {
+                valid.or(result.get());
+            }
+            return valid;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected error during verification", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private BitSet verifyRange(int from, int to) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        BitSet valid = new BitSet();
+        try (WindowReader reader = new WindowReader()) {
+            for (int piece = from; piece < to; piece++) {
+                digest.reset();
+                if (digestPiece(piece, digest, reader) && Arrays.equals(digest.digest(), hashes.get(piece))) {
+                    valid.set(piece);
+                }
+            }
+        }
+        return valid;
+    }
+
+    // returns false if any of the piece's data is missing
+    private boolean digestPiece(int piece, MessageDigest digest, WindowReader reader) throws IOException {
+        long position = layout.getPieceOffset(piece);
+        long remaining = layout.getPieceLength(piece);
+        int fileIndex = layout.findFile(position);
+
+        while (remaining > 0) {
+            TorrentLayout.FileEntry file = layout.getFiles().get(fileIndex);
+            long offsetInFile = position - file.getOffset();
+            long length = Math.min(remaining, file.getSize() - offsetInFile);
+            if (length > 0) {
+                if (!reader.digest(file.getPath(), offsetInFile, length, digest)) {
+                    return false;
+                }
+                position += length;
+                remaining -= length;
+            }
+            fileIndex++;
+        }
+        return true;
+    }
+
+    /**
+     * Print per-file results.
+     *
+     * @return true if all files are complete and valid
+     */
+    boolean report(BitSet valid, PrintStream out) {
+        boolean allValid = true;
+        long pieceSize = layout.getPieceSize();
+        for (TorrentLayout.FileEntry file : layout.getFiles()) {
+            String status, details = "";
+            if (file.getSize() == 0) {
+                status = "OK";
+            } else if (!Files.exists(file.getPath())) {
+                status = "MISSING";
+            } else {
+                int first = file.getFirstPiece(pieceSize), last = file.getLastPiece(pieceSize);
+                int total = last - first + 1;
+                int invalid = total - valid.get(first, last + 1).cardinality();
+                status = (invalid == 0) ? "OK" : "CORRUPT";
+                if (invalid > 0) {
+                    details = String.format(" (%d of %d pieces invalid)", invalid, total);
+                }
+            }
+            allValid &= status.equals("OK");
+            out.println(String.format("%-8s %s%s", status, file.getPath(), details));
+        }
+        out.println(String.format("%d of %d pieces valid", valid.cardinality(), layout.getPieceCount()));
+        return allValid;
+    }
+
+    /**
+     * Reads files via a single mapped window, which is remapped when reading goes beyond it.
+     */
+    private static class WindowReader implements AutoCloseable {
+        private Path path;
+        private FileChannel channel;
+        private long fileSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        boolean digest(Path path, long offset, long length, MessageDigest digest) throws IOException {
+            if (!open(path) || offset + length > fileSize) {
+                return false;
+            }
+            while (length > 0) {
+                if (window == null || offset < windowStart || offset >= windowStart + window.capacity()) {
+                    windowStart = offset - (offset % WINDOW_SIZE);
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, fileSize - windowStart));
+                }
+                int position = (int) (offset - windowStart);
+                int n = (int) Math.min(length, window.capacity() - position);
+                window.limit(position + n).position(position);
+                digest.update(window);
+                offset += n;
+                length -= n;
+            }
+            return true;
+        }
+
+        private boolean open(Path path) throws IOException {
+            if (path.equals(this.path)) {
+                return channel != null;
+            }
+            close();
+            this.path = path;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                fileSize = channel.size();
+            } catch (NoSuchFileException e) {
+                channel = null;
+            }
+            return channel != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            path = null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.StorageUnit;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Storage unit, that forwards all calls to another unit. Base class for storage decorators.
+ */
+class DelegatingStorageUnit implements StorageUnit {
+
+    protected final StorageUnit delegate;
+
+    DelegatingStorageUnit(StorageUnit delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public int readBlock(ByteBuffer buffer, long offset) {
+        return delegate.readBlock(buffer, offset);
+    }
+
+    @Override
+    public void readBlock(byte[] buffer, long offset) {
+        delegate.readBlock(buffer, offset);
+    }
+
+    @Override
+    public int writeBlock(ByteBuffer buffer, long offset) {
+        return delegate.writeBlock(buffer, offset);
+    }
+
+    @Override
+    public void writeBlock(byte[] block, long offset) {
+        delegate.writeBlock(block, offset);
+    }
+
+    @Override
+    public long capacity() {
+        return delegate.capacity();
+    }
+
+    @Override
+    public long size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
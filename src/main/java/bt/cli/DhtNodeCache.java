@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.dht.DHTService;
+import bt.net.InetPeerAddress;
+import lbms.plugins.mldht.kad.DHT;
+import lbms.plugins.mldht.kad.KBucketEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers addresses of DHT nodes from the routing table between runs, so that DHT can be bootstrapped
+ * from them instead of starting with an empty routing table.
+ *
+ * The file contains one node per line: host, port and the time it was last seen (epoch millis).
+ */
+class DhtNodeCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DhtNodeCache.class);
+
+    private static final Duration MAX_AGE = Duration.ofDays(3);
+    private static final int MAX_NODES = 256;
+
+    private final Path file;
+    // "host port" -> last seen
+    private final Map<String, Long> nodes;
+
+    DhtNodeCache(Path file) {
+        this.file = file;
+        this.nodes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Read the cache file, dropping stale entries.
+     *
+     * @return Nodes, most recently seen first
+     */
+    Collection<InetPeerAddress> load() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return nodes();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read DHT node cache: " + file, e);
+            return nodes();
+        }
+        for (String line : lines) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 3) {
+                continue;
+            }
+            try {
+                Integer.parseInt(parts[1]);
+                nodes.merge(parts[0] + " " + parts[1], Long.parseLong(parts[2]), Math::max);
+            } catch (NumberFormatException e) {
+                // ignore malformed lines
+            }
+        }
+        prune();
+        return nodes();
+    }
+
+    /**
+     * Record the nodes from the DHT routing table, that have responded to our queries.
+     * Must be called before the DHT service is shut down.
+     */
+    void recordRoutingTable(DHTService dhtService) {
+        getMldht(dhtService).ifPresent(dht -> dht.getNode().table().stream()
+                .flatMap(entry -> entry.getBucket().entriesStream())
+                .filter(KBucketEntry::verifiedReachable)
+                .forEach(node -> {
+                    InetSocketAddress address = node.getAddress();
+                    nodes.merge(address.getAddress().getHostAddress() + " " + address.getPort(),
+                            node.getLastSeen(), Math::max);
+                }));
+    }
+
+    // bt does not expose the routing table, so it is read from the underlying mldht instance
+    private static Optional<DHT> getMldht(DHTService dhtService) {
+        try {
+            Field field = dhtService.getClass().getDeclaredField("dht");
+            field.setAccessible(true);
+            return Optional.ofNullable((DHT) field.get(dhtService));
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            LOGGER.warn("Failed to read DHT routing table from " + dhtService.getClass().getName(), e);
+            return Optional.empty();
+        }
+    }
+
+    void save() {
+        prune();
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Long> node : sortedByLastSeen()) {
+                    writer.write(node.getKey() + " " + node.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write DHT node cache: " + file, e);
+        }
+    }
+
+    private void prune() {
+        long oldest = System.currentTimeMillis() - MAX_AGE.toMillis();
+        nodes.values().removeIf(lastSeen -> lastSeen < oldest);
+        List<Map.Entry<String, Long>> sorted = sortedByLastSeen();
+        for (int i = MAX_NODES; i < sorted.size(); i++) {
+            nodes.remove(sorted.get(i).getKey());
+        }
+    }
+
+    private List<Map.Entry<String, Long>> sortedByLastSeen() {
+        return nodes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .collect(Collectors.toList());
+    }
+
+    private Collection<InetPeerAddress> nodes() {
+        return sortedByLastSeen().stream()
+                .map(node -> {
+                    String[] parts = node.getKey().split(" ");
+                    return new InetPeerAddress(parts[0], Integer.parseInt(parts[1]));
+                })
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of verified pieces between restarts.
+ *
+ * For each torrent a resume file is stored in the state directory, containing the set of verified pieces
+ * and sizes and modification times of the torrent's files. When the torrent is started next time,
+ * the pieces are trusted to be verified, if none of the files has changed since.
+ */
+class FastResume {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FastResume.class);
+
+    private static final int MAGIC = 0x42544652; // BTFR
+    private static final int VERSION = 1;
+
+    /**
+     * Contents of a resume file.
+     */
+    static class State {
+        private final int chunkCount;
+        private final BitSet verified;
+        private final long[] fileSizes;
+        private final long[] fileModificationTimes;
+
+        /**
+         * @param fileSizes Sizes of the torrent's files in bytes or -1 for missing files
+         * @param fileModificationTimes Modification times of the torrent's files in millis or -1 for missing files
+         */
+        State(int chunkCount, BitSet verified, long[] fileSizes, long[] fileModificationTimes) {
+            if (fileSizes.length != fileModificationTimes.length) {
+                throw new IllegalArgumentException("Sizes and modification times must be given for each file");
+            }
+            this.chunkCount = chunkCount;
+            this.verified = verified;
+            this.fileSizes = fileSizes;
+            this.fileModificationTimes = fileModificationTimes;
+        }
+
+        int getChunkCount() {
+            return chunkCount;
+        }
+
+        BitSet getVerified() {
+            return verified;
+        }
+
+        long[] getFileSizes() {
+            return fileSizes;
+        }
+
+        long[] getFileModificationTimes() {
+            return fileModificationTimes;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(chunkCount);
+            long[] words = verified.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            out.writeInt(fileSizes.length);
+            for (int i = 0; i < fileSizes.length; i++) {
+                out.writeLong(fileSizes[i]);
+                out.writeLong(fileModificationTimes[i]);
+            }
+        }
+
+        /**
+         * @return State or null, if the data has not been written by this version
+         */
+        static State readFrom(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int chunkCount = in.readInt();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            int fileCount = in.readInt();
+            long[] fileSizes = new long[fileCount];
+            long[] fileModificationTimes = new long[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                fileSizes[i] = in.readLong();
+                fileModificationTimes[i] = in.readLong();
+            }
+            return new State(chunkCount, BitSet.valueOf(words), fileSizes, fileModificationTimes);
+        }
+    }
+
+    private static class TorrentEntry {
+        private final Torrent torrent;
+        private final int chunkCount;
+        private final byte[] firstChunkHash;
+        private final AtomicBoolean invalidated;
+        private volatile Bitfield bitfield;
+
+        TorrentEntry(Torrent torrent) {
+            this.torrent = torrent;
+            this.chunkCount = (int) ((torrent.getSize() + torrent.getChunkSize() - 1) / torrent.getChunkSize());
+            this.firstChunkHash = torrent.getChunkHashes().iterator().next();
+            this.invalidated = new AtomicBoolean(false);
+        }
+    }
+
+    private final Path rootDirectory;
+    private final Path stateDirectory;
+    private final Map<String, TorrentEntry> torrents;
+
+    /**
+     * @param rootDirectory Download directory
+     * @param stateDirectory Directory for storing resume files
+     */
+    FastResume(Path rootDirectory, Path stateDirectory) {
+        this.rootDirectory = rootDirectory;
+        this.stateDirectory = stateDirectory;
+        this.torrents = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Must be called before the torrent's data is verified.
+     */
+    void register(Torrent torrent) {
+        if (torrent.getChunkHashes().iterator().hasNext()) {
+            torrents.put(Hex.encode(torrent.getTorrentId().getBytes()), new TorrentEntry(torrent));
+        }
+    }
+
+    /**
+     * Restore the verified pieces of a previously registered torrent.
+     *
+     * @param chunkCount Number of pieces in the torrent
+     * @param firstChunkHash Hash of the first piece; along with the number of pieces used to identify the torrent
+     * @param bitfield Bitfield to be updated; it's also remembered for subsequent {@link #save()}
+     * @return true if the verified pieces have been restored, false if the data needs to be verified
+     */
+    boolean restore(int chunkCount, byte[] firstChunkHash, Bitfield bitfield) {
+        Optional<Map.Entry<String, TorrentEntry>> match = torrents.entrySet().stream()
+                .filter(e -> e.getValue().chunkCount == chunkCount
+                        && Arrays.equals(e.getValue().firstChunkHash, firstChunkHash))
+                .findAny();
+        if (!match.isPresent()) {
+            return false;
+        }
+
+        String key = match.get().getKey();
+        TorrentEntry entry = match.get().getValue();
+        entry.bitfield = bitfield;
+
+        Path resumeFile = getResumeFile(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(resumeFile)))) {
+            State state = State.readFrom(in);
+            if (state == null || state.getChunkCount() != chunkCount) {
+                LOGGER.warn("Ignoring incompatible resume file: {}", resumeFile);
+                return false;
+            }
+            List<TorrentFile> files = entry.torrent.getFiles();
+            if (state.getFileSizes().length != files.size()) {
+                return false;
+            }
+            for (int i = 0; i < files.size(); i++) {
+                Path path = StoragePaths.getFilePath(rootDirectory, entry.torrent, files.get(i));
+                if (state.getFileSizes()[i] != getSize(path)
+                        || state.getFileModificationTimes()[i] != getLastModified(path)) {
+                    LOGGER.info("File has changed since the last run, will verify all data: {}", path);
+                    return false;
+                }
+            }
+
+            BitSet verified = state.getVerified();
+            for (int i = verified.nextSetBit(0); i >= 0 && i < chunkCount; i = verified.nextSetBit(i + 1)) {
+                bitfield.markVerified(i);
+            }
+            LOGGER.info("Restored {} verified pieces from {}", verified.cardinality(), resumeFile);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read resume file: " + resumeFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Delete the torrent's resume file, because incomplete pieces are about to be written to its files.
+     * Unless the file is written again by {@link #save()}, all data will be verified on the next start.
+     */
+    void invalidate(Torrent torrent) {
+        String key = Hex.encode(torrent.getTorrentId().getBytes());
+        TorrentEntry entry = torrents.get(key);
+        // deleting once is enough, the file is not written again until shutdown
+        if (entry == null || !entry.invalidated.compareAndSet(false, true)) {
+            return;
+        }
+        Path resumeFile = getResumeFile(key);
+        try {
+            Files.deleteIfExists(resumeFile);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete resume file: " + resumeFile, e);
+        }
+    }
+
+    /**
+     * Write resume files for all torrents, which data has been verified.
+     */
+    void save() {
+        torrents.forEach((key, entry) -> {
+            Bitfield bitfield = entry.bitfield;
+            if (bitfield != null) {
+                try {
+                    save(key, entry.torrent, bitfield);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to write resume file for torrent: " + entry.torrent.getName(), e);
+                }
+            }
+        });
+    }
+
+    private void save(String key, Torrent torrent, Bitfield bitfield) throws IOException {
+        int chunkCount = bitfield.getPiecesTotal();
+        BitSet verified = new BitSet(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            if (bitfield.isVerified(i)) {
+                verified.set(i);
+            }
+        }
+
+        Files.createDirectories(stateDirectory);
+        Path resumeFile = getResumeFile(key);
+        Path tempFile = resumeFile.resolveSibling(resumeFile.getFileName() + ".tmp");
+        List<TorrentFile> files = torrent.getFiles();
+        long[] fileSizes = new long[files.size()];
+        long[] fileModificationTimes = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            Path path = StoragePaths.getFilePath(rootDirectory, torrent, files.get(i));
+            fileSizes[i] = getSize(path);
+            fileModificationTimes[i] = getLastModified(path);
+        }
+        State state = new State(chunkCount, verified, fileSizes, fileModificationTimes);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            state.writeTo(out);
+        }
+        // never leave a partially written resume file
+        Files.move(tempFile, resumeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path getResumeFile(String key) {
+        return stateDirectory.resolve(key + ".resume");
+    }
+
+    private static long getSize(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : -1;
+    }
+
+    private static long getLastModified(Path path) throws IOException {
+        return Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : -1;
+    }
+}
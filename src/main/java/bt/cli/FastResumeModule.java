@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.ChunkVerifier;
+import bt.data.DefaultChunkVerifier;
+import bt.data.digest.Digester;
+import bt.runtime.Config;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+
+/**
+ * Replaces the standard chunk verifier with {@link FastResumeVerifier}.
+ */
+class FastResumeModule extends AbstractModule {
+
+    private final FastResume fastResume;
+
+    FastResumeModule(FastResume fastResume) {
+        this.fastResume = fastResume;
+    }
+
+    @Override
+    protected void configure() {
+        // nothing to bind; see provider methods
+    }
+
+    @Provides
+    @Singleton
+    public ChunkVerifier provideVerifier(Config config, Digester digester) {
+        return new FastResumeVerifier(new DefaultChunkVerifier(digester, config.getNumOfHashingThreads()), fastResume);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.data.ChunkDescriptor;
+import bt.data.ChunkVerifier;
+
+import java.util.List;
+
+/**
+ * Skips initial verification of torrent's data, if the verified pieces can be restored from a resume file.
+ */
+class FastResumeVerifier implements ChunkVerifier {
+
+    private final ChunkVerifier delegate;
+    private final FastResume fastResume;
+
+    FastResumeVerifier(ChunkVerifier delegate, FastResume fastResume) {
+        this.delegate = delegate;
+        this.fastResume = fastResume;
+    }
+
+    @Override
+    public boolean verify(List<ChunkDescriptor> chunks, Bitfield bitfield) {
+        if (!chunks.isEmpty() && fastResume.restore(chunks.size(), chunks.get(0).getChecksum(), bitfield)) {
+            return bitfield.getPiecesComplete() == chunks.size();
+        }
+        return delegate.verify(chunks, bitfield);
+    }
+
+    @Override
+    public boolean verify(ChunkDescriptor chunk) {
+        return delegate.verify(chunk);
+    }
+
+    @Override
+    public boolean verifyIfPresent(ChunkDescriptor chunk) {
+        return delegate.verifyIfPresent(chunk);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Extends files to their full size ahead of writes, according to {@link Options.Preallocation}.
+ */
+class FileAllocator {
+
+    private static final int ZERO_BUFFER_SIZE = 1024 * 1024;
+
+    // read-only source of zeros, shared by all threads via duplicate()
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(ZERO_BUFFER_SIZE).asReadOnlyBuffer();
+
+    /**
+     * Make sure, that the file has the given size. Never truncates the file.
+     */
+    static void allocate(FileChannel channel, long capacity, Options.Preallocation preallocation) throws IOException {
+        long size = channel.size();
+        if (size >= capacity) {
+            return;
+        }
+        switch (preallocation) {
+            case LAZY: {
+                // file grows as the data arrives
+                break;
+            }
+            case SPARSE: {
+                // writing the last byte sets the file's length without allocating disk space for the gap
+                channel.write(ByteBuffer.wrap(new byte[1]), capacity - 1);
+                break;
+            }
+            case FULL: {
+                // there's no fallocate() in Java; writing zeros sequentially lets the filesystem
+                // allocate contiguous extents up front, instead of in the random order of piece arrival
+                ByteBuffer zeros = ZEROS.duplicate();
+                for (long position = size; position < capacity; ) {
+                    zeros.clear();
+                    zeros.limit((int) Math.min(zeros.capacity(), capacity - position));
+                    position += channel.write(zeros, position);
+                }
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Unknown preallocation: " + preallocation.name());
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.TorrentFile;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Download priorities of the files in a torrent and the resulting priorities of its pieces.
+ *
+ * Piece priority is the highest priority of the files, that the piece overlaps.
+ * Until the torrent's metadata is known, all pieces have normal priority.
+ */
+class FilePriorities {
+
+    enum Priority {
+        // order matters: lower ordinal means higher priority
+        HIGH, NORMAL, LOW;
+
+        static Priority parse(String s) {
+            try {
+                return valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown priority: " + s + "; expected high, normal or low");
+            }
+        }
+    }
+
+    private volatile TorrentLayout layout;
+    private volatile Priority[] filePriorities;
+    // ordinal of the priority of each piece
+    private volatile byte[] piecePriorities;
+
+    /**
+     * Assign initial priorities, once the torrent's metadata becomes available.
+     */
+    synchronized void init(TorrentLayout layout, Function<TorrentFile, Priority> initialPriority) {
+        List<TorrentLayout.FileEntry> files = layout.getFiles();
+        Priority[] filePriorities = new Priority[files.size()];
+        for (TorrentLayout.FileEntry file : files) {
+            filePriorities[file.getIndex()] = initialPriority.apply(file.getFile());
+        }
+        this.layout = layout;
+        this.filePriorities = filePriorities;
+        updatePiecePriorities();
+    }
+
+    /**
+     * Change priority of files, which path inside the torrent ('/'-separated) matches the pattern.
+     *
+     * @return Number of matching files
+     * @throws IllegalStateException if the torrent's metadata is not known yet
+     */
+    synchronized int set(Pattern pattern, Priority priority) {
+        TorrentLayout layout = this.layout;
+        if (layout == null) {
+            throw new IllegalStateException("Metadata has not been fetched yet");
+        }
+        Priority[] filePriorities = Arrays.copyOf(this.filePriorities, this.filePriorities.length);
+        int matched = 0;
+        for (TorrentLayout.FileEntry file : layout.getFiles()) {
+            if (pattern.matcher(String.join("/", file.getFile().getPathElements())).matches()) {
+                filePriorities[file.getIndex()] = priority;
+                matched++;
+            }
+        }
+        this.filePriorities = filePriorities;
+        updatePiecePriorities();
+        return matched;
+    }
+
+    private void updatePiecePriorities() {
+        TorrentLayout layout = this.layout;
+        Priority[] filePriorities = this.filePriorities;
+        long pieceSize = layout.getPieceSize();
+
+        byte[] piecePriorities = new byte[layout.getPieceCount()];
+        Arrays.fill(piecePriorities, (byte) Priority.LOW.ordinal());
+        for (TorrentLayout.FileEntry file : layout.getFiles()) {
+            byte priority = (byte) filePriorities[file.getIndex()].ordinal();
+            for (int i = file.getFirstPiece(pieceSize); i <= file.getLastPiece(pieceSize); i++) {
+                if (priority < piecePriorities[i]) {
+                    piecePriorities[i] = priority;
+                }
+            }
+        }
+        // publish a new array, so that readers never see a partially updated state
+        this.piecePriorities = piecePriorities;
+    }
+
+    /**
+     * @return Ordinal of the piece's priority (lower is more important)
+     */
+    int getPieceRank(int pieceIndex) {
+        byte[] piecePriorities = this.piecePriorities;
+        if (piecePriorities == null || pieceIndex >= piecePriorities.length) {
+            return Priority.NORMAL.ordinal();
+        }
+        return piecePriorities[pieceIndex];
+    }
+}
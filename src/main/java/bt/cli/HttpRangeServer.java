@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Serves files of the torrents over HTTP on a loopback port, while they are being downloaded.
+ *
+ * Files are available at {@code /<job id>/<path inside the torrent>}, and a listing of all files at {@code /}.
+ * Single byte ranges are supported. Requesting a range moves the download position of the job's
+ * {@link StreamingSelector} to the beginning of the range, and the response is written piece by piece,
+ * as soon as each piece is verified. Skipped files are not served, and the response is aborted,
+ * if the job is paused or stopped, or no piece has been verified for a while.
+ */
+class HttpRangeServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpRangeServer.class);
+
+    private static final Duration PIECE_TIMEOUT = Duration.ofMinutes(2);
+
+    private static class Range {
+        private final long start;
+        private final long end; // exclusive
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final int port;
+    private final TorrentScheduler scheduler;
+    private final Storage storage;
+    private final Function<TorrentJob, Optional<Bitfield>> bitfieldLookup;
+    private final Path rootDirectory;
+
+    private volatile HttpServer server;
+    private volatile ExecutorService executor;
+
+    HttpRangeServer(int port, TorrentScheduler scheduler, Storage storage,
+                    Function<TorrentJob, Optional<Bitfield>> bitfieldLookup, Path rootDirectory) {
+        this.port = port;
+        this.scheduler = scheduler;
+        this.storage = storage;
+        this.bitfieldLookup = bitfieldLookup;
+        this.rootDirectory = rootDirectory;
+    }
+
+    void start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        // requests block until data is available, hence one thread per request
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "bt.cli.http-range-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.start();
+        this.server = server;
+        this.executor = executor;
+        LOGGER.info("Serving files on {}", server.getAddress());
+    }
+
+    void stop() {
+        HttpServer server = this.server;
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if ("/".equals(path)) {
+                sendListing(exchange);
+            } else {
+                sendFile(exchange, path.substring(1), "HEAD".equals(method));
+            }
+        } catch (IOException e) {
+            // client has gone away or waiting for data has been aborted
+            LOGGER.debug("Failed to serve request: " + exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sendListing(HttpExchange exchange) throws IOException {
+        StringBuilder listing = new StringBuilder();
+        for (TorrentJob job : scheduler.getJobs()) {
+            Torrent torrent = job.getTorrent();
+            if (torrent != null) {
+                for (TorrentLayout.FileEntry file : new TorrentLayout(torrent, rootDirectory).getFiles()) {
+                    String path = String.join("/", file.getFile().getPathElements());
+                    if (!job.isSkipped(path)) {
+                        listing.append('/').append(job.getId()).append('/').append(path).append('\n');
+                    }
+                }
+            }
+        }
+        byte[] body = listing.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void sendFile(HttpExchange exchange, String path, boolean headOnly) throws IOException {
+        int separator = path.indexOf('/');
+        Optional<TorrentJob> job = Optional.empty();
+        if (separator > 0) {
+            try {
+                job = scheduler.getJob(Integer.parseInt(path.substring(0, separator)));
+            } catch (NumberFormatException e) {
+                // not found
+            }
+        }
+        Torrent torrent = job.map(TorrentJob::getTorrent).orElse(null);
+        if (torrent == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        String filePath = path.substring(separator + 1);
+        TorrentLayout layout = new TorrentLayout(torrent, rootDirectory);
+        Optional<TorrentLayout.FileEntry> file = layout.getFiles().stream()
+                .filter(entry -> String.join("/", entry.getFile().getPathElements()).equals(filePath))
+                .findFirst();
+        if (!file.isPresent() || job.get().isSkipped(filePath)) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        long size = file.get().getSize();
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Accept-Ranges", "bytes");
+        headers.set("Content-Type", "application/octet-stream");
+
+        String rangeHeader = exchange.getRequestHeaders().getFirst("Range");
+        if (rangeHeader != null && (!rangeHeader.trim().startsWith("bytes=") || rangeHeader.indexOf(',') >= 0)) {
+            // multiple ranges are not supported, fall back to the whole file
+            rangeHeader = null;
+        }
+        Range range = (rangeHeader == null) ? new Range(0, size) : parseRange(rangeHeader, size);
+        if (range == null) {
+            headers.set("Content-Range", "bytes */" + size);
+            exchange.sendResponseHeaders(416, -1);
+            return;
+        }
+
+        int status = 200;
+        if (rangeHeader != null) {
+            status = 206;
+            headers.set("Content-Range", "bytes " + range.start + "-" + (range.end - 1) + "/" + size);
+        }
+        long length = range.end - range.start;
+        if (headOnly) {
+            headers.set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        // zero length must be signalled with -1, as 0 means chunked encoding
+        exchange.sendResponseHeaders(status, (length == 0) ? -1 : length);
+
+        TorrentJob torrentJob = job.get();
+        StreamingSelector selector = torrentJob.getStreamingSelector();
+        if (selector != null && length > 0) {
+            selector.seek((int) ((file.get().getOffset() + range.start) / layout.getPieceSize()));
+        }
+
+        // give up, if no piece has been verified for too long, e.g. when there are no peers
+        AtomicLong deadline = new AtomicLong(System.nanoTime() + PIECE_TIMEOUT.toNanos());
+        VerifiedDataReader reader = new VerifiedDataReader(layout, () -> bitfieldLookup.apply(torrentJob),
+                () -> isFinished(torrentJob) || System.nanoTime() - deadline.get() > 0);
+        try (StorageUnit unit = storage.getUnit(torrent, file.get().getFile());
+             OutputStream out = exchange.getResponseBody()) {
+            reader.copy(unit, file.get(), range.start, range.end, out,
+                    piece -> deadline.set(System.nanoTime() + PIECE_TIMEOUT.toNanos()));
+        }
+    }
+
+    // there's no point in waiting for data of a job, that is not going to download anything (for now)
+    private static boolean isFinished(TorrentJob job) {
+        switch (job.getStatus()) {
+            case COMPLETE:
+            case PAUSED:
+            case REMOVED:
+            case FAILED: {
+                return true;
+            }
+            default: {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return Range or null, if the range is not satisfiable
+     */
+    private static Range parseRange(String header, long size) {
+        String value = header.trim().substring("bytes=".length()).trim();
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = value.substring(0, dash).trim();
+            String last = value.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix range: last N bytes
+                long suffixLength = Long.parseLong(last);
+                return (suffixLength <= 0 || size == 0) ? null : new Range(Math.max(0, size - suffixLength), size);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size : Math.min(Long.parseLong(last) + 1, size);
+            return (start >= size || start >= end) ? null : new Range(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
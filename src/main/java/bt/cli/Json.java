@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+/**
+ * Helpers for writing JSON by hand.
+ */
+class Json {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Append a quoted and escaped string. Non-ASCII characters are escaped as well,
+     * so that the output does not depend on the encoding.
+     */
+    static void appendString(StringBuilder out, CharSequence s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': {
+                    out.append("\\\"");
+                    break;
+                }
+                case '\\': {
+                    out.append("\\\\");
+                    break;
+                }
+                case '\n': {
+                    out.append("\\n");
+                    break;
+                }
+                case '\r': {
+                    out.append("\\r");
+                    break;
+                }
+                case '\t': {
+                    out.append("\\t");
+                    break;
+                }
+                default: {
+                    if (c < 0x20 || c >= 0x7F) {
+                        out.append("\\u")
+                                .append(HEX_DIGITS[(c >> 12) & 0xF])
+                                .append(HEX_DIGITS[(c >> 8) & 0xF])
+                                .append(HEX_DIGITS[(c >> 4) & 0xF])
+                                .append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.nio.file.Path;
+
+/**
+ * Storage, that accesses torrent files via memory-mapped regions,
+ * thus avoiding copying of data between kernel and user space buffers on each read or write.
+ */
+class MappedStorage implements Storage {
+
+    private final Path rootDirectory;
+    private final long regionSize;
+    private final Options.Preallocation preallocation;
+
+    MappedStorage(Path rootDirectory, long regionSize) {
+        this(rootDirectory, regionSize, Options.Preallocation.LAZY);
+    }
+
+    /**
+     * @param regionSize Size of a single mapped region; larger files are mapped by several regions
+     */
+    MappedStorage(Path rootDirectory, long regionSize, Options.Preallocation preallocation) {
+        if (regionSize <= 0 || regionSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid region size: " + regionSize);
+        }
+        this.rootDirectory = rootDirectory;
+        this.regionSize = regionSize;
+        this.preallocation = preallocation;
+    }
+
+    @Override
+    public StorageUnit getUnit(Torrent torrent, TorrentFile torrentFile) {
+        return new MappedStorageUnit(StoragePaths.getFilePath(rootDirectory, torrent, torrentFile),
+                torrentFile.getSize(), regionSize, preallocation);
+    }
+
+    public void flush() {
+        // mapped regions are forced to disk when the units are closed
+    }
+}
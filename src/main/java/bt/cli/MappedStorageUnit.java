@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.BtException;
+import bt.data.StorageUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Storage unit, that maps the file into memory lazily, one region at a time.
+ * Regions are never unmapped explicitly before the unit is closed.
+ *
+ * Mapping a region extends the file up to the region's end, hence with lazy preallocation
+ * the file grows one region at a time. Reads never create or extend the file: regions, that are not
+ * on disk yet, are read with plain positional reads instead of being mapped.
+ */
+class MappedStorageUnit implements StorageUnit {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedStorageUnit.class);
+
+    private final Path file;
+    private final long capacity;
+    private final long regionSize;
+    private final Options.Preallocation preallocation;
+
+    private volatile FileChannel channel;
+    // guarded by this
+    private boolean allocated;
+    private final AtomicReferenceArray<MappedByteBuffer> regions;
+    private volatile boolean closed;
+
+    MappedStorageUnit(Path file, long capacity, long regionSize, Options.Preallocation preallocation) {
+        this.file = file;
+        this.capacity = capacity;
+        this.regionSize = regionSize;
+        this.preallocation = preallocation;
+        this.regions = new AtomicReferenceArray<>((int) ((capacity + regionSize - 1) / regionSize));
+    }
+
+    @Override
+    public int readBlock(ByteBuffer buffer, long offset) {
+        checkBounds(offset, buffer.remaining());
+        int length = buffer.remaining();
+        int read = 0;
+        while (read < length) {
+            ByteBuffer region = getRegionView(offset + read, false);
+            if (region == null) {
+                // mapping the region would create or extend the file
+                return readUnmapped(buffer, offset + read, read);
+            }
+            int n = Math.min(region.remaining(), length - read);
+            region.limit(region.position() + n);
+            buffer.put(region);
+            read += n;
+        }
+        return read;
+    }
+
+    // reads the rest of the block from the file, if it exists; returns -1 if nothing has been read (same as
+    // FileSystemStorageUnit)
+    private int readUnmapped(ByteBuffer buffer, long offset, int alreadyRead) {
+        try {
+            FileChannel channel = getChannel(false);
+            int total = alreadyRead;
+            if (channel != null) {
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, offset + total - alreadyRead);
+                    if (read < 0) {
+                        break;
+                    }
+                    total += read;
+                }
+            }
+            return (total == 0) ? -1 : total;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read file: " + file, e);
+        }
+    }
+
+    @Override
+    public void readBlock(byte[] buffer, long offset) {
+        readBlock(ByteBuffer.wrap(buffer), offset);
+    }
+
+    @Override
+    public int writeBlock(ByteBuffer buffer, long offset) {
+        checkBounds(offset, buffer.remaining());
+        int length = buffer.remaining();
+        int written = 0;
+        while (written < length) {
+            ByteBuffer region = getRegionView(offset + written, true);
+            int n = Math.min(region.remaining(), length - written);
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + n);
+            region.put(buffer);
+            buffer.limit(limit);
+            written += n;
+        }
+        return written;
+    }
+
+    @Override
+    public void writeBlock(byte[] block, long offset) {
+        writeBlock(ByteBuffer.wrap(block), offset);
+    }
+
+    @Override
+    public long capacity() {
+        return capacity;
+    }
+
+    @Override
+    public long size() {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to get size of file: " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = 0; i < regions.length(); i++) {
+            MappedByteBuffer region = regions.getAndSet(i, null);
+            if (region != null) {
+                region.force();
+            }
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close file: " + file, e);
+            }
+        }
+    }
+
+    private void checkBounds(long offset, int length) {
+        if (offset < 0 || offset + length > capacity) {
+            throw new BtException("Illegal arguments: offset (" + offset + "), length (" + length
+                    + "), capacity (" + capacity + "), file: " + file);
+        }
+    }
+
+    // returns a view of the region, that contains the offset, positioned at this offset,
+    // or null, if the region is not mapped yet, and mapping it for reading would create or extend the file
+    private ByteBuffer getRegionView(long offset, boolean write) {
+        int index = (int) (offset / regionSize);
+        MappedByteBuffer region = regions.get(index);
+        if (region == null) {
+            region = mapRegion(index, write);
+            if (region == null) {
+                return null;
+            }
+        }
+        ByteBuffer view = region.duplicate();
+        view.position((int) (offset - index * regionSize));
+        return view;
+    }
+
+    private synchronized MappedByteBuffer mapRegion(int index, boolean write) {
+        MappedByteBuffer region = regions.get(index);
+        if (region == null) {
+            long position = index * regionSize;
+            long size = Math.min(regionSize, capacity - position);
+            try {
+                FileChannel channel = getChannel(write);
+                if (channel == null || (!write && channel.size() < position + size)) {
+                    return null;
+                }
+                region = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map region " + index + " of file: " + file, e);
+            }
+            regions.set(index, region);
+        }
+        return region;
+    }
+
+    /**
+     * The file is created and preallocated on the first write only.
+     *
+     * @return Channel or null, if the file does not exist and {@code write} is false
+     */
+    private synchronized FileChannel getChannel(boolean write) throws IOException {
+        if (closed) {
+            throw new BtException("Storage unit is closed: " + file);
+        }
+        if (channel == null) {
+            if (!write && !Files.exists(file)) {
+                return null;
+            }
+            if (write) {
+                Path parent = file.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                // opened for writing as well, so that the channel can be reused for subsequent writes
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+        if (write && !allocated) {
+            FileAllocator.allocate(channel, capacity, preallocation);
+            allocated = true;
+        }
+        return channel;
+    }
+}
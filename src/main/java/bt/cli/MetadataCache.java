@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.Torrent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps metainfo of torrents, that were fetched via magnet links, in {@code <info hash>.torrent} files,
+ * so that subsequent runs of the same magnet links do not need to wait for metadata exchange.
+ */
+class MetadataCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final String INFO_HASH_PREFIX = "urn:btih:";
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+    private static final int INFO_HASH_LENGTH = 20;
+
+    /**
+     * @return Info hash in lower-case hex or empty, if the URI does not contain a BitTorrent info hash
+     */
+    static Optional<String> parseInfoHash(String magnetUri) {
+        for (String value : getParameters(magnetUri, "xt")) {
+            if (!value.regionMatches(true, 0, INFO_HASH_PREFIX, 0, INFO_HASH_PREFIX.length())) {
+                continue;
+            }
+            String hash = value.substring(INFO_HASH_PREFIX.length());
+            if (hash.length() == INFO_HASH_LENGTH * 2 && hash.matches("[0-9a-fA-F]+")) {
+                return Optional.of(hash.toLowerCase(Locale.ROOT));
+            } else if (hash.length() == 32) {
+                return decodeBase32(hash.toUpperCase(Locale.ROOT)).map(Hex::encode);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static List<String> getParameters(String magnetUri, String name) {
+        List<String> values = new ArrayList<>();
+        int queryStart = magnetUri.indexOf('?');
+        if (queryStart < 0) {
+            return values;
+        }
+        for (String parameter : magnetUri.substring(queryStart + 1).split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            // parameters may be numbered, e.g. "tr.1"
+            String key = parameter.substring(0, separator);
+            if (key.equals(name) || key.startsWith(name + ".")) {
+                try {
+                    values.add(URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    // ignore malformed parameters
+                }
+            }
+        }
+        return values;
+    }
+
+    private static Optional<byte[]> decodeBase32(String s) {
+        byte[] bytes = new byte[INFO_HASH_LENGTH];
+        int buffer = 0, bits = 0, pos = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int value = BASE32_ALPHABET.indexOf(s.charAt(i));
+            if (value < 0) {
+                return Optional.empty();
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8) {
+                bits -= 8;
+                bytes[pos++] = (byte) (buffer >> bits);
+            }
+        }
+        return Optional.of(bytes);
+    }
+
+    private final Path directory;
+
+    MetadataCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return Cached metainfo file for the magnet link or empty, if the metadata has not been fetched before
+     */
+    Optional<URL> lookup(String magnetUri) {
+        return parseInfoHash(magnetUri)
+                .map(this::getCacheFile)
+                .filter(Files::isRegularFile)
+                .map(file -> {
+                    try {
+                        return file.toUri().toURL();
+                    } catch (MalformedURLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+    }
+
+    /**
+     * Save the metadata, that was fetched for the magnet link. Trackers from the magnet link are
+     * included in the saved metainfo.
+     */
+    void store(String magnetUri, Torrent torrent) {
+        Path cacheFile = getCacheFile(Hex.encode(torrent.getTorrentId().getBytes()));
+        if (Files.exists(cacheFile)) {
+            return;
+        }
+
+        Map<String, Object> metainfo = new LinkedHashMap<>();
+        List<String> trackers = getParameters(magnetUri, "tr");
+        if (!trackers.isEmpty()) {
+            metainfo.put("announce", trackers.get(0));
+            List<Object> announceList = new ArrayList<>();
+            trackers.forEach(tracker -> announceList.add(Arrays.asList(tracker)));
+            metainfo.put("announce-list", announceList);
+        }
+        metainfo.put("info", new BencodeWriter.Raw(torrent.getSource().getExchangedMetadata()));
+
+        try {
+            Files.createDirectories(directory);
+            Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            Files.write(tempFile, BencodeWriter.encode(metainfo));
+            // never leave a partially written metainfo file
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to cache metadata for torrent: " + torrent.getName(), e);
+        }
+    }
+
+    private Path getCacheFile(String infoHash) {
+        return directory.resolve(infoHash + ".torrent");
+    }
+}
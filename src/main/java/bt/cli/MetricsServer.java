@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.torrent.TorrentSessionState;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Exports session state of all torrents in Prometheus text format on {@code /metrics}.
+ * Samples of removed torrents are dropped.
+ */
+class MetricsServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static class Sample {
+        private final TorrentJob job;
+        private final long downloaded;
+        private final long uploaded;
+        private final int piecesComplete;
+        private final int piecesRemaining;
+        private final int piecesTotal;
+        private final int peers;
+        private final RateMeter downloadRate;
+        private final RateMeter uploadRate;
+
+        Sample(TorrentJob job, TorrentSessionState state, RateMeter downloadRate, RateMeter uploadRate) {
+            this.job = job;
+            this.downloaded = state.getDownloaded();
+            this.uploaded = state.getUploaded();
+            this.piecesComplete = state.getPiecesComplete();
+            this.piecesRemaining = state.getPiecesRemaining();
+            this.piecesTotal = state.getPiecesTotal();
+            this.peers = state.getConnectedPeers().size();
+            this.downloadRate = downloadRate;
+            this.uploadRate = uploadRate;
+        }
+    }
+
+    private final InetAddress address;
+    private final int port;
+    private final Map<Integer, Sample> samples;
+
+    private volatile HttpServer server;
+
+    /**
+     * @param address Address to bind to
+     */
+    MetricsServer(InetAddress address, int port) {
+        this.address = address;
+        this.port = port;
+        this.samples = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Record the latest session state of the torrent.
+     */
+    void update(TorrentJob job, TorrentSessionState state) {
+        if (job.getStatus() == TorrentJob.Status.REMOVED) {
+            samples.remove(job.getId());
+            return;
+        }
+        samples.compute(job.getId(), (id, previous) -> {
+            RateMeter downloadRate = (previous == null) ? new RateMeter() : previous.downloadRate;
+            RateMeter uploadRate = (previous == null) ? new RateMeter() : previous.uploadRate;
+            long now = System.nanoTime();
+            // meters are only accessed inside compute() and render(), which are synchronized on them
+            synchronized (downloadRate) {
+                downloadRate.update(state.getDownloaded(), now);
+                uploadRate.update(state.getUploaded(), now);
+            }
+            return new Sample(job, state, downloadRate, uploadRate);
+        });
+    }
+
+    void start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+        this.server = server;
+        LOGGER.info("Serving metrics on {}", server.getAddress());
+    }
+
+    void stop() {
+        HttpServer server = this.server;
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String render() {
+        StringBuilder out = new StringBuilder(1024);
+        // the job may have been removed after its last update
+        this.samples.values().removeIf(s -> s.job.getStatus() == TorrentJob.Status.REMOVED);
+        Collection<Sample> samples = this.samples.values();
+
+        header(out, "bt_downloaded_bytes_total", "counter", "Bytes downloaded in the current session");
+        samples.forEach(s -> metric(out, "bt_downloaded_bytes_total", s.job, s.downloaded));
+        header(out, "bt_uploaded_bytes_total", "counter", "Bytes uploaded in the current session");
+        samples.forEach(s -> metric(out, "bt_uploaded_bytes_total", s.job, s.uploaded));
+        header(out, "bt_download_rate_bytes_per_second", "gauge", "Download rate, averaged over the window");
+        samples.forEach(s -> rates(out, "bt_download_rate_bytes_per_second", s, s.downloadRate));
+        header(out, "bt_upload_rate_bytes_per_second", "gauge", "Upload rate, averaged over the window");
+        samples.forEach(s -> rates(out, "bt_upload_rate_bytes_per_second", s, s.uploadRate));
+        header(out, "bt_pieces_complete", "gauge", "Number of verified pieces");
+        samples.forEach(s -> metric(out, "bt_pieces_complete", s.job, s.piecesComplete));
+        header(out, "bt_pieces_remaining", "gauge", "Number of pieces, that remain to be downloaded");
+        samples.forEach(s -> metric(out, "bt_pieces_remaining", s.job, s.piecesRemaining));
+        header(out, "bt_pieces_total", "gauge", "Total number of pieces in the torrent");
+        samples.forEach(s -> metric(out, "bt_pieces_total", s.job, s.piecesTotal));
+        header(out, "bt_peers_connected", "gauge", "Number of connected peers");
+        samples.forEach(s -> metric(out, "bt_peers_connected", s.job, s.peers));
+        header(out, "bt_stage", "gauge", "Current stage of the torrent (1 for the current stage)");
+        samples.forEach(s -> {
+            for (TorrentJob.Status status : TorrentJob.Status.values()) {
+                labels(out.append("bt_stage{"), s.job)
+                        .append(",stage=\"").append(status.name().toLowerCase())
+                        .append("\"} ").append(s.job.getStatus() == status ? 1 : 0).append('\n');
+            }
+        });
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void metric(StringBuilder out, String name, TorrentJob job, long value) {
+        labels(out.append(name).append('{'), job).append("} ").append(value).append('\n');
+    }
+
+    private static void rates(StringBuilder out, String name, Sample sample, RateMeter meter) {
+        synchronized (sample.downloadRate) {
+            for (RateMeter.Window window : RateMeter.Window.values()) {
+                labels(out.append(name).append('{'), sample.job)
+                        .append(",window=\"").append(window.getLabel()).append("\"} ")
+                        .append(meter.getRate(window)).append('\n');
+            }
+        }
+    }
+
+    // label set is the same before and after metadata is fetched
+    private static StringBuilder labels(StringBuilder out, TorrentJob job) {
+        out.append("job=\"").append(job.getId()).append("\",torrent=\"");
+        if (job.getTorrent() != null) {
+            escape(out, job.getTorrent().getName());
+        }
+        return out.append('"');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': {
+                    out.append("\\\\");
+                    break;
+                }
+                case '"': {
+                    out.append("\\\"");
+                    break;
+                }
+                case '\n': {
+                    out.append("\\n");
+                    break;
+                }
+                default: {
+                    out.append(c);
+                }
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.List;
 
 public class Options {
 
@@ -32,6 +33,18 @@ public class Options {
         NORMAL, VERBOSE, TRACE
     }
 
+    public enum StorageType {
+        FILE, MMAP
+    }
+
+    public enum Preallocation {
+        LAZY, SPARSE, FULL
+    }
+
+    public enum OutputFormat {
+        TEXT, JSON
+    }
+
     private static final OptionSpec<File> metainfoFileOptionSpec;
     private static final OptionSpec<String> magnetUriOptionSpec;
     private static final OptionSpec<File> targetDirectoryOptionSpec;
@@ -44,6 +57,51 @@ public class Options {
     private static final OptionSpec<Integer> torrentPortOptionSpec;
     private static final OptionSpec<Integer> dhtPortOptionSpec;
     private static final OptionSpec<Void> shouldDownloadAllFiles;
+    private static final OptionSpec<File> torrentListOptionSpec;
+    private static final OptionSpec<Integer> maxActiveTorrentsOptionSpec;
+    private static final OptionSpec<Void> daemonOptionSpec;
+    private static final OptionSpec<Integer> controlPortOptionSpec;
+    private static final OptionSpec<String> controlCommandOptionSpec;
+    private static final OptionSpec<String> storageTypeOptionSpec;
+    private static final OptionSpec<Integer> maxOpenFilesOptionSpec;
+    private static final OptionSpec<Void> fastResumeOptionSpec;
+    private static final OptionSpec<Integer> streamingWindowOptionSpec;
+    private static final OptionSpec<Integer> metricsPortOptionSpec;
+    private static final OptionSpec<String> metricsAddressOptionSpec;
+    private static final OptionSpec<Integer> maxPeerConnectionsOptionSpec;
+    private static final OptionSpec<Integer> maxPeerConnectionsPerTorrentOptionSpec;
+    private static final OptionSpec<Integer> transferBlockSizeOptionSpec;
+    private static final OptionSpec<Integer> maxOutstandingRequestsOptionSpec;
+    private static final OptionSpec<Integer> networkBufferSizeOptionSpec;
+    private static final OptionSpec<Integer> maxIOQueueSizeOptionSpec;
+    private static final OptionSpec<Integer> peerDiscoveryIntervalOptionSpec;
+    private static final OptionSpec<Integer> maxDownloadRateOptionSpec;
+    private static final OptionSpec<Integer> maxUploadRateOptionSpec;
+    private static final OptionSpec<Integer> maxDownloadRatePerTorrentOptionSpec;
+    private static final OptionSpec<Integer> maxUploadRatePerTorrentOptionSpec;
+    private static final OptionSpec<Integer> burstOptionSpec;
+    private static final OptionSpec<Void> verifyOptionSpec;
+    private static final OptionSpec<File> createSourceOptionSpec;
+    private static final OptionSpec<File> createOutputOptionSpec;
+    private static final OptionSpec<Integer> pieceSizeOptionSpec;
+    private static final OptionSpec<String> announceOptionSpec;
+    private static final OptionSpec<Void> privateOptionSpec;
+    private static final OptionSpec<String> includeOptionSpec;
+    private static final OptionSpec<String> excludeOptionSpec;
+    private static final OptionSpec<String> extensionOptionSpec;
+    private static final OptionSpec<String> minFileSizeOptionSpec;
+    private static final OptionSpec<String> maxFileSizeOptionSpec;
+    private static final OptionSpec<File> rulesFileOptionSpec;
+    private static final OptionSpec<String> priorityOptionSpec;
+    private static final OptionSpec<String> outputFormatOptionSpec;
+    private static final OptionSpec<File> statusFileOptionSpec;
+    private static final OptionSpec<String> pipeOptionSpec;
+    private static final OptionSpec<File> pipeTargetOptionSpec;
+    private static final OptionSpec<Integer> pipeLookAheadOptionSpec;
+    private static final OptionSpec<Integer> httpPortOptionSpec;
+    private static final OptionSpec<String> preallocationOptionSpec;
+    private static final OptionSpec<Integer> writeBufferOptionSpec;
+    private static final OptionSpec<Integer> readCacheOptionSpec;
 
     private static final OptionParser parser;
 
@@ -53,15 +111,14 @@ public class Options {
                 acceptsAll(Arrays.asList("?", "h", "help")).isForHelp();
             }
         };
-        metainfoFileOptionSpec = parser.acceptsAll(Arrays.asList("f", "file"), "Torrent metainfo file")
+        metainfoFileOptionSpec = parser.acceptsAll(Arrays.asList("f", "file"), "Torrent metainfo file (may be repeated)")
                 .withRequiredArg().ofType(File.class);
 
-        magnetUriOptionSpec = parser.acceptsAll(Arrays.asList("m", "magnet"), "Magnet URI")
+        magnetUriOptionSpec = parser.acceptsAll(Arrays.asList("m", "magnet"), "Magnet URI (may be repeated)")
                 .withRequiredArg().ofType(String.class);
 
-        targetDirectoryOptionSpec = parser.acceptsAll(Arrays.asList("d", "dir"), "Target download location")
-                .withRequiredArg().ofType(File.class)
-                .required();
+        targetDirectoryOptionSpec = parser.acceptsAll(Arrays.asList("d", "dir"), "Target download location (required unless sending a control command or creating a torrent)")
+                .withRequiredArg().ofType(File.class);
 
         shouldSeedOptionSpec = parser.acceptsAll(Arrays.asList("s", "seed"), "Continue to seed when download is complete");
 
@@ -83,27 +140,178 @@ public class Options {
                 .withRequiredArg().ofType(Integer.class);
 
         shouldDownloadAllFiles = parser.acceptsAll(Arrays.asList("a", "all"), "Download all files (file selection will be disabled)");
+
+        torrentListOptionSpec = parser.acceptsAll(Arrays.asList("l", "list"), "File with torrent metainfo paths and/or magnet URIs, one per line")
+                .withRequiredArg().ofType(File.class);
+
+        maxActiveTorrentsOptionSpec = parser.accepts("max-active", "Maximum number of concurrently downloading torrents")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(3);
+
+        daemonOptionSpec = parser.accepts("daemon", "Keep running and accept control commands (all files will be downloaded)");
+
+        controlPortOptionSpec = parser.accepts("control-port", "Loopback port for daemon control commands")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(6892);
+
+        controlCommandOptionSpec = parser.accepts("ctl", "Send command to a running daemon and exit (add <file|magnet>, pause <id>, resume <id>, remove <id>, priority <id> <level> <pattern>, status, shutdown)")
+                .withRequiredArg().ofType(String.class);
+
+        storageTypeOptionSpec = parser.accepts("storage", "Storage implementation (file, mmap)")
+                .withRequiredArg().ofType(String.class)
+                .defaultsTo("file");
+
+        maxOpenFilesOptionSpec = parser.accepts("max-open-files", "Keep at most this many files open (file storage only)")
+                .withRequiredArg().ofType(Integer.class);
+
+        fastResumeOptionSpec = parser.accepts("fast-resume", "Remember verified pieces and skip verification on restart, if files have not changed");
+
+        streamingWindowOptionSpec = parser.accepts("streaming", "Download a window of pieces ahead of the playback position in order, and the rest rarest-first")
+                .withOptionalArg().ofType(Integer.class)
+                .describedAs("window size in pieces")
+                .defaultsTo(16);
+
+        metricsPortOptionSpec = parser.accepts("metrics-port", "Serve metrics in Prometheus format over HTTP on specific port")
+                .withRequiredArg().ofType(Integer.class);
+
+        metricsAddressOptionSpec = parser.accepts("metrics-address", "Serve metrics on specific network address (default: loopback)")
+                .withRequiredArg().ofType(String.class);
+
+        maxPeerConnectionsOptionSpec = parser.accepts("max-peers", "Maximum number of peer connections overall")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxPeerConnectionsPerTorrentOptionSpec = parser.accepts("max-peers-per-torrent", "Maximum number of peer connections per torrent")
+                .withRequiredArg().ofType(Integer.class);
+
+        transferBlockSizeOptionSpec = parser.accepts("block-size", "Size of requested blocks in bytes (power of 2)")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxOutstandingRequestsOptionSpec = parser.accepts("max-requests", "Maximum number of pending block requests per peer")
+                .withRequiredArg().ofType(Integer.class);
+
+        networkBufferSizeOptionSpec = parser.accepts("net-buffer", "Size of network buffers in bytes")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxIOQueueSizeOptionSpec = parser.accepts("io-queue", "Maximum number of pending disk operations")
+                .withRequiredArg().ofType(Integer.class);
+
+        peerDiscoveryIntervalOptionSpec = parser.accepts("peer-discovery-interval", "Interval between peer discovery attempts in seconds")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxDownloadRateOptionSpec = parser.accepts("max-down", "Limit total download rate (KiB/s)")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxUploadRateOptionSpec = parser.accepts("max-up", "Limit total upload rate (KiB/s)")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxDownloadRatePerTorrentOptionSpec = parser.accepts("max-down-per-torrent", "Limit download rate of each torrent (KiB/s)")
+                .withRequiredArg().ofType(Integer.class);
+
+        maxUploadRatePerTorrentOptionSpec = parser.accepts("max-up-per-torrent", "Limit upload rate of each torrent (KiB/s)")
+                .withRequiredArg().ofType(Integer.class);
+
+        burstOptionSpec = parser.accepts("burst", "Allow traffic bursts of up to this many seconds worth of the rate limit")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(1);
+
+        verifyOptionSpec = parser.accepts("verify", "Verify downloaded data against the torrent file and exit (no network access)");
+
+        createSourceOptionSpec = parser.accepts("create", "Create torrent file from a file or directory and exit")
+                .withRequiredArg().ofType(File.class);
+
+        createOutputOptionSpec = parser.accepts("out", "Location of the created torrent file (default: <name>.torrent)")
+                .withRequiredArg().ofType(File.class);
+
+        pieceSizeOptionSpec = parser.accepts("piece-size", "Piece size of the created torrent in bytes (power of 2; chosen automatically by default)")
+                .withRequiredArg().ofType(Integer.class);
+
+        announceOptionSpec = parser.accepts("announce", "Tracker URL of the created torrent")
+                .withRequiredArg();
+
+        privateOptionSpec = parser.accepts("private", "Mark the created torrent as private");
+
+        includeOptionSpec = parser.accepts("include", "Download only files matching glob or 're:' regex (may be repeated)")
+                .withRequiredArg();
+
+        excludeOptionSpec = parser.accepts("exclude", "Skip files matching glob or 're:' regex (may be repeated)")
+                .withRequiredArg();
+
+        extensionOptionSpec = parser.accepts("ext", "Download only files with these extensions (comma-separated)")
+                .withRequiredArg().withValuesSeparatedBy(',');
+
+        minFileSizeOptionSpec = parser.accepts("min-size", "Skip files smaller than this (bytes, or with K, M, G suffix)")
+                .withRequiredArg();
+
+        maxFileSizeOptionSpec = parser.accepts("max-size", "Skip files larger than this (bytes, or with K, M, G suffix)")
+                .withRequiredArg();
+
+        rulesFileOptionSpec = parser.accepts("rules", "File with file selection rules, one per line")
+                .withRequiredArg().ofType(File.class);
+
+        priorityOptionSpec = parser.accepts("priority", "Download files matching glob or 're:' regex with priority high, normal or low, e.g. high:*.idx (may be repeated)")
+                .withRequiredArg();
+
+        outputFormatOptionSpec = parser.accepts("output-format", "Status output format (text, json)")
+                .withRequiredArg()
+                .defaultsTo("text");
+
+        statusFileOptionSpec = parser.accepts("status-file", "Write status to file or FIFO instead of stdout")
+                .withRequiredArg().ofType(File.class);
+
+        pipeOptionSpec = parser.accepts("pipe", "Download only the first file matching glob or 're:' regex and write its contents in order to stdout (status goes to stderr)")
+                .withRequiredArg();
+
+        pipeTargetOptionSpec = parser.accepts("pipe-to", "Write piped contents to file or FIFO instead of stdout")
+                .withRequiredArg().ofType(File.class);
+
+        pipeLookAheadOptionSpec = parser.accepts("pipe-look-ahead", "Maximum number of pieces to download ahead of the data, that has been piped")
+                .withRequiredArg().ofType(Integer.class)
+                .defaultsTo(64);
+
+        httpPortOptionSpec = parser.accepts("http-port", "Serve files over HTTP with range support on specific loopback port, while they are being downloaded")
+                .withRequiredArg().ofType(Integer.class);
+
+        preallocationOptionSpec = parser.accepts("preallocate", "Extend files as data arrives (lazy), to full size without allocating disk space (sparse), or fill them with zeros up front (full)")
+                .withRequiredArg()
+                .defaultsTo("lazy");
+
+        writeBufferOptionSpec = parser.accepts("write-buffer", "Collect received blocks of each piece in memory and write them to disk at once, using at most this many MiB")
+                .withRequiredArg().ofType(Integer.class);
+
+        readCacheOptionSpec = parser.accepts("read-cache", "Keep recently read pieces in memory, using at most this many MiB, and read the next piece in advance, when blocks are requested in order (useful for seeding)")
+                .withRequiredArg().ofType(Integer.class);
     }
 
     /**
      * @throws OptionException
+     * @throws IllegalArgumentException if an option has an invalid value
      */
     public static Options parse(String... args) {
-        OptionSet opts = parser.parse(args);
-
-        return new Options(
-                opts.valueOf(metainfoFileOptionSpec),
-                opts.valueOf(magnetUriOptionSpec),
-                opts.valueOf(targetDirectoryOptionSpec),
-                opts.has(shouldSeedOptionSpec),
-                opts.has(sequentialOptionSpec),
-                opts.has(enforceEncryptionOptionSpec),
-                opts.has(verboseOptionSpec),
-                opts.has(traceOptionSpec),
-                opts.valueOf(inetAddressOptionSpec),
-                opts.valueOf(torrentPortOptionSpec),
-                opts.valueOf(dhtPortOptionSpec),
-                opts.has(shouldDownloadAllFiles));
+        return new Options(parser.parse(args));
+    }
+
+    private static Preallocation parsePreallocation(String s) {
+        try {
+            return Preallocation.valueOf(s.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown preallocation: " + s);
+        }
+    }
+
+    private static OutputFormat parseOutputFormat(String s) {
+        try {
+            return OutputFormat.valueOf(s.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown output format: " + s);
+        }
+    }
+
+    private static StorageType parseStorageType(String s) {
+        try {
+            return StorageType.valueOf(s.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown storage type: " + s);
+        }
     }
 
     public static void printHelp(OutputStream out) {
@@ -114,51 +322,134 @@ public class Options {
         }
     }
 
-    private File metainfoFile;
-    private String magnetUri;
-    private File targetDirectory;
-    private boolean seedAfterDownloaded;
-    private boolean sequential;
-    private boolean enforceEncryption;
-    private boolean verboseLogging;
-    private boolean traceLogging;
-    private String inetAddress;
-    private Integer port;
-    private Integer dhtPort;
-    private boolean downloadAllFiles;
-
-    public Options(File metainfoFile,
-                   String magnetUri,
-                   File targetDirectory,
-                   boolean seedAfterDownloaded,
-                   boolean sequential,
-                   boolean enforceEncryption,
-                   boolean verboseLogging,
-                   boolean traceLogging,
-                   String inetAddress,
-                   Integer port,
-                   Integer dhtPort,
-                   boolean downloadAllFiles) {
-        this.metainfoFile = metainfoFile;
-        this.magnetUri = magnetUri;
-        this.targetDirectory = targetDirectory;
-        this.seedAfterDownloaded = seedAfterDownloaded;
-        this.sequential = sequential;
-        this.enforceEncryption = enforceEncryption;
-        this.verboseLogging = verboseLogging;
-        this.traceLogging = traceLogging;
-        this.inetAddress = inetAddress;
-        this.port = port;
-        this.dhtPort = dhtPort;
-        this.downloadAllFiles = downloadAllFiles;
-    }
-
-    public File getMetainfoFile() {
-        return metainfoFile;
-    }
-
-    public String getMagnetUri() {
-        return magnetUri;
+    private final List<File> metainfoFiles;
+    private final List<String> magnetUris;
+    private final File torrentList;
+    private final File targetDirectory;
+    private final boolean seedAfterDownloaded;
+    private final boolean sequential;
+    private final boolean enforceEncryption;
+    private final boolean verboseLogging;
+    private final boolean traceLogging;
+    private final String inetAddress;
+    private final Integer port;
+    private final Integer dhtPort;
+    private final boolean downloadAllFiles;
+    private final int maxActiveTorrents;
+    private final boolean daemon;
+    private final int controlPort;
+    private final String controlCommand;
+    private final StorageType storageType;
+    private final Integer maxOpenFiles;
+    private final boolean fastResume;
+    private final Integer streamingWindow;
+    private final Integer metricsPort;
+    private final String metricsAddress;
+    private final Integer maxPeerConnections;
+    private final Integer maxPeerConnectionsPerTorrent;
+    private final Integer transferBlockSize;
+    private final Integer maxOutstandingRequests;
+    private final Integer networkBufferSize;
+    private final Integer maxIOQueueSize;
+    private final Integer peerDiscoveryInterval;
+    private final Integer maxDownloadRate;
+    private final Integer maxUploadRate;
+    private final Integer maxDownloadRatePerTorrent;
+    private final Integer maxUploadRatePerTorrent;
+    private final int burstSeconds;
+    private final boolean verify;
+    private final File createSource;
+    private final File createOutput;
+    private final Integer pieceSize;
+    private final String announce;
+    private final boolean privateTorrent;
+    private final List<String> includePatterns;
+    private final List<String> excludePatterns;
+    private final List<String> extensions;
+    private final Long minFileSize;
+    private final Long maxFileSize;
+    private final File rulesFile;
+    private final List<String> priorityRules;
+    private final OutputFormat outputFormat;
+    private final File statusFile;
+    private final String pipePattern;
+    private final File pipeTarget;
+    private final int pipeLookAhead;
+    private final Integer httpPort;
+    private final Preallocation preallocation;
+    private final Integer writeBufferSize;
+    private final Integer readCacheSize;
+
+    private Options(OptionSet opts) {
+        this.metainfoFiles = opts.valuesOf(metainfoFileOptionSpec);
+        this.magnetUris = opts.valuesOf(magnetUriOptionSpec);
+        this.torrentList = opts.valueOf(torrentListOptionSpec);
+        this.targetDirectory = opts.valueOf(targetDirectoryOptionSpec);
+        this.seedAfterDownloaded = opts.has(shouldSeedOptionSpec);
+        this.sequential = opts.has(sequentialOptionSpec);
+        this.enforceEncryption = opts.has(enforceEncryptionOptionSpec);
+        this.verboseLogging = opts.has(verboseOptionSpec);
+        this.traceLogging = opts.has(traceOptionSpec);
+        this.inetAddress = opts.valueOf(inetAddressOptionSpec);
+        this.port = opts.valueOf(torrentPortOptionSpec);
+        this.dhtPort = opts.valueOf(dhtPortOptionSpec);
+        this.downloadAllFiles = opts.has(shouldDownloadAllFiles);
+        this.maxActiveTorrents = opts.valueOf(maxActiveTorrentsOptionSpec);
+        this.daemon = opts.has(daemonOptionSpec);
+        this.controlPort = opts.valueOf(controlPortOptionSpec);
+        this.controlCommand = opts.valueOf(controlCommandOptionSpec);
+        this.storageType = parseStorageType(opts.valueOf(storageTypeOptionSpec));
+        this.maxOpenFiles = opts.valueOf(maxOpenFilesOptionSpec);
+        this.fastResume = opts.has(fastResumeOptionSpec);
+        this.streamingWindow = opts.has(streamingWindowOptionSpec) ? opts.valueOf(streamingWindowOptionSpec) : null;
+        this.metricsPort = opts.valueOf(metricsPortOptionSpec);
+        this.metricsAddress = opts.valueOf(metricsAddressOptionSpec);
+        this.maxPeerConnections = opts.valueOf(maxPeerConnectionsOptionSpec);
+        this.maxPeerConnectionsPerTorrent = opts.valueOf(maxPeerConnectionsPerTorrentOptionSpec);
+        this.transferBlockSize = opts.valueOf(transferBlockSizeOptionSpec);
+        this.maxOutstandingRequests = opts.valueOf(maxOutstandingRequestsOptionSpec);
+        this.networkBufferSize = opts.valueOf(networkBufferSizeOptionSpec);
+        this.maxIOQueueSize = opts.valueOf(maxIOQueueSizeOptionSpec);
+        this.peerDiscoveryInterval = opts.valueOf(peerDiscoveryIntervalOptionSpec);
+        this.maxDownloadRate = opts.valueOf(maxDownloadRateOptionSpec);
+        this.maxUploadRate = opts.valueOf(maxUploadRateOptionSpec);
+        this.maxDownloadRatePerTorrent = opts.valueOf(maxDownloadRatePerTorrentOptionSpec);
+        this.maxUploadRatePerTorrent = opts.valueOf(maxUploadRatePerTorrentOptionSpec);
+        this.burstSeconds = opts.valueOf(burstOptionSpec);
+        this.verify = opts.has(verifyOptionSpec);
+        this.createSource = opts.valueOf(createSourceOptionSpec);
+        this.createOutput = opts.valueOf(createOutputOptionSpec);
+        this.pieceSize = opts.valueOf(pieceSizeOptionSpec);
+        this.announce = opts.valueOf(announceOptionSpec);
+        this.privateTorrent = opts.has(privateOptionSpec);
+        this.includePatterns = opts.valuesOf(includeOptionSpec);
+        this.excludePatterns = opts.valuesOf(excludeOptionSpec);
+        this.extensions = opts.valuesOf(extensionOptionSpec);
+        this.minFileSize = opts.has(minFileSizeOptionSpec) ? RuleFileSelector.parseSize(opts.valueOf(minFileSizeOptionSpec)) : null;
+        this.maxFileSize = opts.has(maxFileSizeOptionSpec) ? RuleFileSelector.parseSize(opts.valueOf(maxFileSizeOptionSpec)) : null;
+        this.rulesFile = opts.valueOf(rulesFileOptionSpec);
+        this.priorityRules = opts.valuesOf(priorityOptionSpec);
+        this.outputFormat = parseOutputFormat(opts.valueOf(outputFormatOptionSpec));
+        this.statusFile = opts.valueOf(statusFileOptionSpec);
+        this.pipePattern = opts.valueOf(pipeOptionSpec);
+        this.pipeTarget = opts.valueOf(pipeTargetOptionSpec);
+        this.pipeLookAhead = opts.valueOf(pipeLookAheadOptionSpec);
+        this.httpPort = opts.valueOf(httpPortOptionSpec);
+        this.preallocation = parsePreallocation(opts.valueOf(preallocationOptionSpec));
+        this.writeBufferSize = opts.valueOf(writeBufferOptionSpec);
+        this.readCacheSize = opts.valueOf(readCacheOptionSpec);
+    }
+
+    public List<File> getMetainfoFiles() {
+        return metainfoFiles;
+    }
+
+    public List<String> getMagnetUris() {
+        return magnetUris;
+    }
+
+    public File getTorrentList() {
+        return torrentList;
     }
 
     public File getTargetDirectory() {
@@ -169,6 +460,13 @@ public class Options {
         return seedAfterDownloaded;
     }
 
+    /**
+     * @return Size of the streaming window in pieces or null, if streaming is not enabled
+     */
+    public Integer getStreamingWindow() {
+        return streamingWindow;
+    }
+
     public boolean downloadSequentially() {
         return sequential;
     }
@@ -193,7 +491,236 @@ public class Options {
         return dhtPort;
     }
 
+    public Integer getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * @return Address to serve metrics on or null, if metrics should be served on loopback only
+     */
+    public String getMetricsAddress() {
+        return metricsAddress;
+    }
+
     public boolean shouldDownloadAllFiles() {
         return downloadAllFiles;
     }
+
+    public int getMaxActiveTorrents() {
+        return maxActiveTorrents;
+    }
+
+    public boolean runAsDaemon() {
+        return daemon;
+    }
+
+    public int getControlPort() {
+        return controlPort;
+    }
+
+    /**
+     * @return Command to send to a running daemon or null
+     */
+    public String getControlCommand() {
+        return controlCommand;
+    }
+
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
+    /**
+     * @return Maximum number of open files or null, if not limited
+     */
+    public Integer getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public boolean useFastResume() {
+        return fastResume;
+    }
+
+    public Integer getMaxPeerConnections() {
+        return maxPeerConnections;
+    }
+
+    public Integer getMaxPeerConnectionsPerTorrent() {
+        return maxPeerConnectionsPerTorrent;
+    }
+
+    public Integer getTransferBlockSize() {
+        return transferBlockSize;
+    }
+
+    public Integer getMaxOutstandingRequests() {
+        return maxOutstandingRequests;
+    }
+
+    public Integer getNetworkBufferSize() {
+        return networkBufferSize;
+    }
+
+    public Integer getMaxIOQueueSize() {
+        return maxIOQueueSize;
+    }
+
+    /**
+     * @return Interval in seconds or null, if not specified
+     */
+    public Integer getPeerDiscoveryInterval() {
+        return peerDiscoveryInterval;
+    }
+
+    /**
+     * @return Rate in KiB/s or null, if not limited
+     */
+    public Integer getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * @return Rate in KiB/s or null, if not limited
+     */
+    public Integer getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * @return Rate in KiB/s or null, if not limited
+     */
+    public Integer getMaxDownloadRatePerTorrent() {
+        return maxDownloadRatePerTorrent;
+    }
+
+    /**
+     * @return Rate in KiB/s or null, if not limited
+     */
+    public Integer getMaxUploadRatePerTorrent() {
+        return maxUploadRatePerTorrent;
+    }
+
+    public int getBurstSeconds() {
+        return burstSeconds;
+    }
+
+    public boolean shouldVerify() {
+        return verify;
+    }
+
+    /**
+     * @return File or directory to create a torrent from or null, if not in creation mode
+     */
+    public File getCreateSource() {
+        return createSource;
+    }
+
+    public File getCreateOutput() {
+        return createOutput;
+    }
+
+    /**
+     * @return Piece size in bytes or null, if it should be chosen automatically
+     */
+    public Integer getPieceSize() {
+        return pieceSize;
+    }
+
+    public String getAnnounce() {
+        return announce;
+    }
+
+    public boolean isPrivateTorrent() {
+        return privateTorrent;
+    }
+
+    public List<String> getIncludePatterns() {
+        return includePatterns;
+    }
+
+    public List<String> getExcludePatterns() {
+        return excludePatterns;
+    }
+
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * @return Size in bytes or null, if not limited
+     */
+    public Long getMinFileSize() {
+        return minFileSize;
+    }
+
+    /**
+     * @return Size in bytes or null, if not limited
+     */
+    public Long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public File getRulesFile() {
+        return rulesFile;
+    }
+
+    /**
+     * @return Rules in form of {@code <priority>:<pattern>}
+     */
+    public List<String> getPriorityRules() {
+        return priorityRules;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * @return File to write status to or null, if status should be printed to stdout
+     */
+    public File getStatusFile() {
+        return statusFile;
+    }
+
+    /**
+     * @return Pattern of the file to pipe or null, if piping is not enabled
+     */
+    public String getPipePattern() {
+        return pipePattern;
+    }
+
+    /**
+     * @return File to pipe contents to or null, if contents should be written to stdout
+     */
+    public File getPipeTarget() {
+        return pipeTarget;
+    }
+
+    public int getPipeLookAhead() {
+        return pipeLookAhead;
+    }
+
+    /**
+     * @return Port to serve files on or null, if files should not be served
+     */
+    public Integer getHttpPort() {
+        return httpPort;
+    }
+
+    public Preallocation getPreallocation() {
+        return preallocation;
+    }
+
+    /**
+     * @return Size of the write buffer in MiB or null, if blocks should be written as they arrive
+     */
+    public Integer getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * @return Size of the read cache in MiB or null, if pieces should not be cached
+     */
+    public Integer getReadCacheSize() {
+        return readCacheSize;
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.nio.file.Path;
+
+/**
+ * File system storage, that keeps a bounded number of files open,
+ * no matter how many files there are in the torrents.
+ */
+class PooledFileStorage implements Storage {
+
+    private final Path rootDirectory;
+    private final ChannelPool channelPool;
+    private final Options.Preallocation preallocation;
+
+    PooledFileStorage(Path rootDirectory, ChannelPool channelPool) {
+        this(rootDirectory, channelPool, Options.Preallocation.LAZY);
+    }
+
+    PooledFileStorage(Path rootDirectory, ChannelPool channelPool, Options.Preallocation preallocation) {
+        this.rootDirectory = rootDirectory;
+        this.channelPool = channelPool;
+        this.preallocation = preallocation;
+    }
+
+    @Override
+    public StorageUnit getUnit(Torrent torrent, TorrentFile torrentFile) {
+        return new PooledStorageUnit(StoragePaths.getFilePath(rootDirectory, torrent, torrentFile),
+                torrentFile.getSize(), channelPool, preallocation);
+    }
+
+    public void flush() {
+        // writes go directly to the file channels
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.BtException;
+import bt.data.StorageUnit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Storage unit, that leases the file's channel from a shared pool for each read or write.
+ */
+class PooledStorageUnit implements StorageUnit {
+
+    private final Path file;
+    private final long capacity;
+    private final ChannelPool channelPool;
+    private final Options.Preallocation preallocation;
+    private volatile boolean allocated;
+
+    PooledStorageUnit(Path file, long capacity, ChannelPool channelPool, Options.Preallocation preallocation) {
+        this.file = file;
+        this.capacity = capacity;
+        this.channelPool = channelPool;
+        this.preallocation = preallocation;
+    }
+
+    @Override
+    public int readBlock(ByteBuffer buffer, long offset) {
+        checkBounds(offset, buffer.remaining());
+        try {
+            // reading must not create the file
+            FileChannel channel = channelPool.acquire(file, false);
+            if (channel == null) {
+                return -1;
+            }
+            try {
+                int total = 0;
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, offset + total);
+                    if (read < 0) {
+                        // same as FileSystemStorageUnit
+                        return (total == 0) ? -1 : total;
+                    }
+                    total += read;
+                }
+                return total;
+            } finally {
+                channelPool.release(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from file: " + file, e);
+        }
+    }
+
+    @Override
+    public void readBlock(byte[] buffer, long offset) {
+        readBlock(ByteBuffer.wrap(buffer), offset);
+    }
+
+    @Override
+    public int writeBlock(ByteBuffer buffer, long offset) {
+        checkBounds(offset, buffer.remaining());
+        try {
+            FileChannel channel = channelPool.acquire(file);
+            try {
+                if (!allocated) {
+                    allocate(channel);
+                }
+                int total = 0;
+                while (buffer.hasRemaining()) {
+                    total += channel.write(buffer, offset + total);
+                }
+                return total;
+            } finally {
+                channelPool.release(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to file: " + file, e);
+        }
+    }
+
+    @Override
+    public void writeBlock(byte[] block, long offset) {
+        writeBlock(ByteBuffer.wrap(block), offset);
+    }
+
+    @Override
+    public long capacity() {
+        return capacity;
+    }
+
+    @Override
+    public long size() {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to get size of file: " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        channelPool.close(file);
+    }
+
+    // done on the first write, so that files, that are never written to (e.g. skipped), are not created
+    private synchronized void allocate(FileChannel channel) throws IOException {
+        if (!allocated) {
+            FileAllocator.allocate(channel, capacity, preallocation);
+            allocated = true;
+        }
+    }
+
+    private void checkBounds(long offset, int length) {
+        if (offset < 0 || offset + length > capacity) {
+            throw new BtException("Illegal arguments: offset (" + offset + "), length (" + length
+                    + "), capacity (" + capacity + "), file: " + file);
+        }
+    }
+}
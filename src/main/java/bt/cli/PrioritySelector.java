@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.torrent.PieceStatistics;
+import bt.torrent.selector.BaseStreamSelector;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+/**
+ * Selects pieces of higher priority files first, and rarest first among pieces of the same priority.
+ * With all priorities being equal, it's equivalent to randomized rarest-first selection.
+ */
+class PrioritySelector extends BaseStreamSelector {
+
+    private final FilePriorities priorities;
+    private final Random random;
+
+    PrioritySelector(FilePriorities priorities) {
+        this.priorities = priorities;
+        this.random = new Random();
+    }
+
+    @Override
+    protected PrimitiveIterator.OfInt createIterator(PieceStatistics pieceStatistics) {
+        int piecesTotal = pieceStatistics.getPiecesTotal();
+
+        // pack (priority, count, random, index) into a single long, so that sorting does not require boxing
+        long[] pieces = new long[piecesTotal];
+        int count = 0;
+        for (int i = 0; i < piecesTotal; i++) {
+            int availability = pieceStatistics.getCount(i);
+            if (availability > 0) {
+                pieces[count++] = ((long) priorities.getPieceRank(i) << 61)
+                        | ((long) Math.min(availability, 0x1FFF) << 48)
+                        | ((long) (random.nextInt() & 0xFFFF) << 32)
+                        | i;
+            }
+        }
+        Arrays.sort(pieces, 0, count);
+
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = (int) pieces[i];
+        }
+        return Arrays.stream(result).iterator();
+    }
+}
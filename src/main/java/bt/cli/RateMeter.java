@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+/**
+ * Computes transfer rate from a monotonically growing byte counter,
+ * as exponentially weighted moving averages over 1, 10 and 60 seconds.
+ *
+ * Rates are normalized by the actual time elapsed between updates (measured with {@link System#nanoTime()}),
+ * so updates don't have to happen at exact intervals.
+ */
+class RateMeter {
+
+    enum Window {
+        ONE_SECOND(1, "1s"), TEN_SECONDS(10, "10s"), ONE_MINUTE(60, "60s");
+
+        private final double seconds;
+        private final String label;
+
+        Window(double seconds, String label) {
+            this.seconds = seconds;
+            this.label = label;
+        }
+
+        String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Window[] WINDOWS = Window.values();
+
+    private final double[] rates;
+    private long lastTotal;
+    private long lastUpdateNanos;
+    private boolean initialized;
+
+    RateMeter() {
+        this.rates = new double[WINDOWS.length];
+    }
+
+    void reset() {
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = 0;
+        }
+        initialized = false;
+    }
+
+    /**
+     * @param total Current value of the byte counter
+     * @param nowNanos Current value of {@link System#nanoTime()}
+     */
+    void update(long total, long nowNanos) {
+        if (!initialized) {
+            lastTotal = total;
+            lastUpdateNanos = nowNanos;
+            initialized = true;
+            return;
+        }
+
+        long elapsedNanos = nowNanos - lastUpdateNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        double elapsedSeconds = elapsedNanos / 1_000_000_000d;
+        // counter may be reset, e.g. when the torrent is restarted
+        double instantRate = Math.max(0, total - lastTotal) / elapsedSeconds;
+
+        for (int i = 0; i < WINDOWS.length; i++) {
+            double alpha = 1 - Math.exp(-elapsedSeconds / WINDOWS[i].seconds);
+            rates[i] += alpha * (instantRate - rates[i]);
+        }
+
+        lastTotal = total;
+        lastUpdateNanos = nowNanos;
+    }
+
+    /**
+     * @return Rate in bytes per second
+     */
+    double getRate(Window window) {
+        return rates[window.ordinal()];
+    }
+}
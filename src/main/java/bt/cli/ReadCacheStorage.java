@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Storage;
+import bt.data.StorageUnit;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Storage, that keeps least recently read pieces in memory,
+ * and reads the next piece in advance, when blocks of a file are read in order.
+ */
+class ReadCacheStorage implements Storage, StatusDetail {
+
+    static class Key {
+        private final TorrentFile file;
+        private final int index;
+
+        Key(TorrentFile file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return file == that.file && index == that.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(file), index);
+        }
+    }
+
+    private final Storage delegate;
+    private final long capacity;
+    private final ExecutorService readAheadExecutor;
+
+    // all access is synchronized on this storage
+    private final LinkedHashMap<Key, byte[]> pieces;
+    private final Set<Key> loading;
+    private long size;
+    // pieces written while loads were in progress, with the generation of the write;
+    // used to avoid caching data, that has been read before the write
+    private final Map<Key, Long> writes;
+    private long generation;
+    private int activeLoads;
+
+    private long hits;
+    private long misses;
+    private long readAheads;
+
+    /**
+     * @param capacity Maximum total size of cached pieces in bytes
+     */
+    ReadCacheStorage(Storage delegate, long capacity) {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.readAheadExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "bt.cli.read-ahead");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pieces = new LinkedHashMap<>(16, 0.75f, true);
+        this.loading = new HashSet<>();
+        this.writes = new HashMap<>();
+    }
+
+    @Override
+    public StorageUnit getUnit(Torrent torrent, TorrentFile torrentFile) {
+        long fileOffset = 0;
+        for (TorrentFile file : torrent.getFiles()) {
+            if (file == torrentFile) {
+                break;
+            }
+            fileOffset += file.getSize();
+        }
+        return new ReadCacheStorageUnit(this, delegate.getUnit(torrent, torrentFile),
+                torrentFile, fileOffset, torrent.getChunkSize());
+    }
+
+    synchronized byte[] get(Key key) {
+        byte[] data = pieces.get(key);
+        if (data == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return data;
+    }
+
+    /**
+     * Must be followed by {@link #endLoad()}.
+     *
+     * @return Generation to pass to {@link #put(Key, byte[], long)}
+     */
+    synchronized long beginLoad() {
+        activeLoads++;
+        return generation;
+    }
+
+    synchronized void endLoad() {
+        if (--activeLoads == 0) {
+            writes.clear();
+        }
+    }
+
+    /**
+     * Cache the data, unless the piece has been written since {@code generation}.
+     */
+    synchronized void put(Key key, byte[] data, long generation) {
+        Long written = writes.get(key);
+        if ((written != null && written > generation) || data.length > capacity) {
+            return;
+        }
+        byte[] previous = pieces.put(key, data);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += data.length;
+        Iterator<byte[]> iter = pieces.values().iterator();
+        while (size > capacity) {
+            size -= iter.next().length;
+            iter.remove();
+        }
+    }
+
+    synchronized void invalidate(Key key) {
+        if (activeLoads > 0) {
+            writes.put(key, ++generation);
+        }
+        byte[] data = pieces.remove(key);
+        if (data != null) {
+            size -= data.length;
+        }
+    }
+
+    /**
+     * Load the piece in background, unless it is already cached or being loaded.
+     */
+    void readAhead(Key key, Runnable load) {
+        synchronized (this) {
+            if (pieces.containsKey(key) || !loading.add(key)) {
+                return;
+            }
+            readAheads++;
+        }
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    load.run();
+                } finally {
+                    synchronized (this) {
+                        loading.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            synchronized (this) {
+                loading.remove(key);
+            }
+        }
+    }
+
+    void shutdown() {
+        readAheadExecutor.shutdownNow();
+    }
+
+    @Override
+    public synchronized void appendTo(StringBuilder out) {
+        out.append(", Read cache: ").append(size >> 20).append(" MB")
+                .append(" (hits: ").append(hits)
+                .append(", misses: ").append(misses)
+                .append(", read-ahead: ").append(readAheads)
+                .append(')');
+    }
+}
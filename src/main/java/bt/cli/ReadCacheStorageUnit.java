@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.StorageUnit;
+import bt.metainfo.TorrentFile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Storage unit, that reads whole pieces into the cache of {@link ReadCacheStorage}.
+ *
+ * Closing the unit does not evict the file's pieces, as other units (e.g. of the HTTP server) may be reading
+ * the same file; pieces of files, that are no longer read, are evicted as least recently used.
+ */
+class ReadCacheStorageUnit extends DelegatingStorageUnit {
+
+    private final ReadCacheStorage storage;
+    private final TorrentFile file;
+    private final long fileOffset;
+    private final int pieceSize;
+    // end of the last read, used to detect sequential access
+    private volatile long lastReadEnd = -1;
+
+    /**
+     * @param fileOffset Offset of the file in the torrent's data
+     * @param pieceSize Size of the torrent's pieces
+     */
+    ReadCacheStorageUnit(ReadCacheStorage storage, StorageUnit delegate, TorrentFile file,
+                         long fileOffset, long pieceSize) {
+        super(delegate);
+        this.storage = storage;
+        this.file = file;
+        this.fileOffset = fileOffset;
+        this.pieceSize = (int) pieceSize;
+    }
+
+    @Override
+    public int readBlock(ByteBuffer buffer, long offset) {
+        boolean sequential = (offset == lastReadEnd);
+        int total = 0;
+        int index = getSegmentIndex(offset);
+        while (buffer.hasRemaining()) {
+            long position = offset + total;
+            index = getSegmentIndex(position);
+            long start = getSegmentStart(index);
+            int length = (int) Math.min(buffer.remaining(), getSegmentEnd(index) - position);
+
+            byte[] data = storage.get(new ReadCacheStorage.Key(file, index));
+            if (data == null) {
+                data = load(index);
+            }
+            if (data == null) {
+                // not fully written yet
+                ByteBuffer block = buffer.duplicate();
+                block.limit(block.position() + length);
+                int read = Math.max(0, delegate.readBlock(block, position));
+                buffer.position(buffer.position() + read);
+                total += read;
+                if (read < length) {
+                    break;
+                }
+            } else {
+                buffer.put(data, (int) (position - start), length);
+                total += length;
+            }
+        }
+        lastReadEnd = offset + total;
+
+        if (sequential && getSegmentEnd(index) < capacity()) {
+            int next = index + 1;
+            storage.readAhead(new ReadCacheStorage.Key(file, next), () -> load(next));
+        }
+        return total;
+    }
+
+    @Override
+    public void readBlock(byte[] buffer, long offset) {
+        readBlock(ByteBuffer.wrap(buffer), offset);
+    }
+
+    @Override
+    public int writeBlock(ByteBuffer buffer, long offset) {
+        long end = offset + buffer.remaining();
+        int written = delegate.writeBlock(buffer, offset);
+        // invalidated after the write, so that concurrent loads don't cache the old data
+        for (int index = getSegmentIndex(offset); getSegmentStart(index) < end; index++) {
+            storage.invalidate(new ReadCacheStorage.Key(file, index));
+        }
+        return written;
+    }
+
+    @Override
+    public void writeBlock(byte[] block, long offset) {
+        writeBlock(ByteBuffer.wrap(block), offset);
+    }
+
+    // returns null if the piece could not be read completely
+    private byte[] load(int index) {
+        long generation = storage.beginLoad();
+        try {
+            long start = getSegmentStart(index);
+            byte[] data = new byte[(int) (getSegmentEnd(index) - start)];
+            if (delegate.readBlock(ByteBuffer.wrap(data), start) < data.length) {
+                return null;
+            }
+            storage.put(new ReadCacheStorage.Key(file, index), data, generation);
+            return data;
+        } finally {
+            storage.endLoad();
+        }
+    }
+
+    private int getSegmentIndex(long position) {
+        return (int) ((fileOffset + position) / pieceSize);
+    }
+
+    // part of the piece, that belongs to this file
+    private long getSegmentStart(int index) {
+        return Math.max(0, (long) index * pieceSize - fileOffset);
+    }
+
+    private long getSegmentEnd(int index) {
+        return Math.min(capacity(), (long) (index + 1) * pieceSize - fileOffset);
+    }
+}
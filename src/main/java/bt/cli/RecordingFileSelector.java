@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.TorrentFile;
+import bt.torrent.fileselector.SelectionResult;
+import bt.torrent.fileselector.TorrentFileSelector;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * Delegates to another selector and reports paths ('/'-separated) of the files, that it has skipped.
+ */
+class RecordingFileSelector extends TorrentFileSelector {
+
+    private final TorrentFileSelector delegate;
+    private final Consumer<String> skippedFileConsumer;
+
+    RecordingFileSelector(TorrentFileSelector delegate, Consumer<String> skippedFileConsumer) {
+        this.delegate = delegate;
+        this.skippedFileConsumer = skippedFileConsumer;
+    }
+
+    @Override
+    protected SelectionResult select(TorrentFile file) {
+        // select() of the delegate is not accessible from here, selectFiles() is
+        SelectionResult result = delegate.selectFiles(Collections.singletonList(file)).get(0);
+        if (result.shouldSkip()) {
+            skippedFileConsumer.accept(String.join("/", file.getPathElements()));
+        }
+        return result;
+    }
+}
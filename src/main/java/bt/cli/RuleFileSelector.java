@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.TorrentFile;
+import bt.torrent.fileselector.SelectionResult;
+import bt.torrent.fileselector.TorrentFileSelector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Selects files without user interaction, based on a set of rules.
+ *
+ * A file is downloaded, if it matches any of the include patterns (or there are none),
+ * does not match any of the exclude patterns, has one of the listed extensions (or there are none)
+ * and its size is within the limits.
+ *
+ * Patterns are globs ({@code *}, {@code ?}, {@code **}, {@code [a-z]}, {@code [!a-z]}, {@code {a,b}})
+ * or regular expressions prefixed with {@code re:}. Patterns are matched against the file's path inside the torrent,
+ * with '/' as separator; globs without '/' are matched against the file name only.
+ *
+ * Priority rules assign download priority to matching files; the first matching rule wins.
+ */
+class RuleFileSelector extends TorrentFileSelector {
+    private static final String REGEX_PREFIX = "re:";
+
+    private static class PriorityRule {
+        private final Pattern pattern;
+        private final FilePriorities.Priority priority;
+
+        PriorityRule(Pattern pattern, FilePriorities.Priority priority) {
+            this.pattern = pattern;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * @return Selector or empty, if no rules were specified
+     */
+    static Optional<RuleFileSelector> fromOptions(Options options) {
+        RuleFileSelector selector = new RuleFileSelector();
+        options.getIncludePatterns().forEach(selector::include);
+        options.getExcludePatterns().forEach(selector::exclude);
+        options.getExtensions().forEach(selector::extension);
+        options.getPriorityRules().forEach(rule -> {
+            int separator = rule.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid priority rule: " + rule + "; expected <priority>:<pattern>");
+            }
+            selector.priority(FilePriorities.Priority.parse(rule.substring(0, separator)), rule.substring(separator + 1));
+        });
+        if (options.getMinFileSize() != null) {
+            selector.minSize = options.getMinFileSize();
+        }
+        if (options.getMaxFileSize() != null) {
+            selector.maxSize = options.getMaxFileSize();
+        }
+        if (options.getRulesFile() != null) {
+            selector.load(options.getRulesFile());
+        }
+        return selector.hasRules() ? Optional.of(selector) : Optional.empty();
+    }
+
+    /**
+     * Parse size with an optional K, M, G or T suffix (powers of 1024).
+     */
+    static long parseSize(String s) {
+        String value = s.trim().toUpperCase(Locale.ROOT);
+        int shift = 0;
+        if (!value.isEmpty()) {
+            switch (value.charAt(value.length() - 1)) {
+                case 'K': {
+                    shift = 10;
+                    break;
+                }
+                case 'M': {
+                    shift = 20;
+                    break;
+                }
+                case 'G': {
+                    shift = 30;
+                    break;
+                }
+                case 'T': {
+                    shift = 40;
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+        }
+        try {
+            long size = Long.parseLong((shift == 0) ? value : value.substring(0, value.length() - 1));
+            if (size < 0 || size > (Long.MAX_VALUE >> shift)) {
+                throw new NumberFormatException();
+            }
+            return size << shift;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + s);
+        }
+    }
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final List<String> extensions;
+    private final List<PriorityRule> priorityRules;
+    private long minSize;
+    private long maxSize;
+
+    RuleFileSelector() {
+        this.includes = new ArrayList<>();
+        this.excludes = new ArrayList<>();
+        this.extensions = new ArrayList<>();
+        this.priorityRules = new ArrayList<>();
+        this.minSize = 0;
+        this.maxSize = Long.MAX_VALUE;
+    }
+
+    void include(String pattern) {
+        includes.add(compilePattern(pattern));
+    }
+
+    void exclude(String pattern) {
+        excludes.add(compilePattern(pattern));
+    }
+
+    void priority(FilePriorities.Priority priority, String pattern) {
+        priorityRules.add(new PriorityRule(compilePattern(pattern), priority));
+    }
+
+    void extension(String extension) {
+        String normalized = extension.trim().toLowerCase(Locale.ROOT);
+        extensions.add(normalized.startsWith(".") ? normalized : "." + normalized);
+    }
+
+    /**
+     * Read rules from file, one per line: {@code include <pattern>}, {@code exclude <pattern>},
+     * {@code ext <extension>[,<extension>...]}, {@code min-size <size>}, {@code max-size <size>}
+     * or {@code priority <high|normal|low> <pattern>}.
+     * Empty lines and lines starting with '#' are ignored.
+     */
+    void load(File rulesFile) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(rulesFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read rules file: " + rulesFile, e);
+        }
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid rule: " + line);
+            }
+            switch (parts[0]) {
+                case "include": {
+                    include(parts[1]);
+                    break;
+                }
+                case "exclude": {
+                    exclude(parts[1]);
+                    break;
+                }
+                case "ext": {
+                    for (String extension : parts[1].split(",")) {
+                        extension(extension);
+                    }
+                    break;
+                }
+                case "min-size": {
+                    minSize = parseSize(parts[1]);
+                    break;
+                }
+                case "max-size": {
+                    maxSize = parseSize(parts[1]);
+                    break;
+                }
+                case "priority": {
+                    String[] priorityAndPattern = parts[1].split("\\s+", 2);
+                    if (priorityAndPattern.length != 2) {
+                        throw new IllegalArgumentException("Invalid rule: " + line);
+                    }
+                    priority(FilePriorities.Priority.parse(priorityAndPattern[0]), priorityAndPattern[1]);
+                    break;
+                }
+                default: {
+                    throw new IllegalArgumentException("Unknown rule: " + line);
+                }
+            }
+        }
+    }
+
+    private boolean hasRules() {
+        return !includes.isEmpty() || !excludes.isEmpty() || !extensions.isEmpty()
+                || !priorityRules.isEmpty() || minSize > 0 || maxSize < Long.MAX_VALUE;
+    }
+
+    boolean hasPriorityRules() {
+        return !priorityRules.isEmpty();
+    }
+
+    FilePriorities.Priority getPriority(TorrentFile file) {
+        String path = String.join("/", file.getPathElements());
+        for (PriorityRule rule : priorityRules) {
+            if (rule.pattern.matcher(path).matches()) {
+                return rule.priority;
+            }
+        }
+        return FilePriorities.Priority.NORMAL;
+    }
+
+    @Override
+    protected SelectionResult select(TorrentFile file) {
+        return accept(file) ? SelectionResult.select().build() : SelectionResult.skip();
+    }
+
+    boolean accept(TorrentFile file) {
+        if (file.getSize() < minSize || file.getSize() > maxSize) {
+            return false;
+        }
+        String path = String.join("/", file.getPathElements());
+        if (!extensions.isEmpty() && !hasExtension(path)) {
+            return false;
+        }
+        if (!includes.isEmpty() && !matchesAny(includes, path)) {
+            return false;
+        }
+        return !matchesAny(excludes, path);
+    }
+
+    private boolean hasExtension(String path) {
+        String lowerCasePath = path.toLowerCase(Locale.ROOT);
+        for (String extension : extensions) {
+            if (lowerCasePath.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compile a glob or a 're:'-prefixed regular expression.
+     */
+    static Pattern compilePattern(String pattern) {
+        try {
+            if (pattern.startsWith(REGEX_PREFIX)) {
+                return Pattern.compile(pattern.substring(REGEX_PREFIX.length()));
+            }
+            String regex = globToRegex(pattern);
+            // globs without a separator match the file name in any directory
+            return Pattern.compile(pattern.contains("/") ? regex : "(?:.*/)?" + regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid pattern: " + pattern, e);
+        }
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        // groups may be nested, e.g. "*.{mkv,{mp,m4}4}"
+        int groupDepth = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*': {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        // "**/" also matches zero directories
+                        if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                            regex.append("(?:.*/)?");
+                            i += 2;
+                        } else {
+                            regex.append(".*");
+                            i += 1;
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                }
+                case '?': {
+                    regex.append("[^/]");
+                    break;
+                }
+                case '[': {
+                    i = appendCharacterClass(glob, i, regex);
+                    break;
+                }
+                case '{': {
+                    regex.append("(?:");
+                    groupDepth++;
+                    break;
+                }
+                case '}': {
+                    if (groupDepth > 0) {
+                        regex.append(")");
+                        groupDepth--;
+                    } else {
+                        regex.append("\\}");
+                    }
+                    break;
+                }
+                case ',': {
+                    regex.append(groupDepth > 0 ? "|" : ",");
+                    break;
+                }
+                default: {
+                    if ("\\.[]()^$+|".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+        if (groupDepth > 0) {
+            throw new IllegalArgumentException("Unterminated group in pattern: " + glob);
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Translate a character class, e.g. "[a-c]" or "[!0-9]", starting at the given '['.
+     * A ']' right after the opening bracket (or after the negation) is a literal,
+     * and an unterminated '[' matches itself.
+     *
+     * @return Index of the last character of the class
+     */
+    private static int appendCharacterClass(String glob, int start, StringBuilder regex) {
+        int contentStart = start + 1;
+        boolean negated = contentStart < glob.length()
+                && (glob.charAt(contentStart) == '!' || glob.charAt(contentStart) == '^');
+        if (negated) {
+            contentStart++;
+        }
+        int end = glob.indexOf(']', (contentStart < glob.length() && glob.charAt(contentStart) == ']')
+                ? contentStart + 1 : contentStart);
+        if (end < 0) {
+            regex.append("\\[");
+            return start;
+        }
+        // like '?' and '*', a negated class never matches the separator
+        regex.append(negated ? "[^/" : "[");
+        for (int i = contentStart; i < end; i++) {
+            char c = glob.charAt(i);
+            if ("\\[]^&".indexOf(c) >= 0) {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+        regex.append(']');
+        return end;
+    }
+}
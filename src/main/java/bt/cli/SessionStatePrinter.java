@@ -19,7 +19,11 @@ package bt.cli;
 import bt.metainfo.Torrent;
 import bt.torrent.TorrentSessionState;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -28,28 +32,88 @@ public class SessionStatePrinter {
         FETCHING_METADATA, CHOOSING_FILES, DOWNLOADING, SEEDING
     }
 
+    private static final char INFINITY = '\u221E';
+
+    private static final String[] STAGE_NAMES = new String[ProcessingStage.values().length];
+
+    static {
+        for (ProcessingStage stage : ProcessingStage.values()) {
+            STAGE_NAMES[stage.ordinal()] = stage.name().toLowerCase();
+        }
+    }
+
+    private final String label;
+    private final PrintStream out;
+    private final Options.OutputFormat format;
+    private final int jobId;
+    private final List<StatusDetail> details;
+    // status line is rendered into the same buffer on each tick to avoid producing garbage
+    private final StatusLine line;
+
     private AtomicReference<Torrent> torrent;
     private AtomicReference<TorrentSessionState> sessionState;
     private AtomicReference<ProcessingStage> processingStage;
-    private AtomicBoolean shutdown;
+    private volatile AtomicBoolean shutdown;
 
-    private long started;
-    private long downloaded;
-    private long uploaded;
+    private final RateMeter downloadRate;
+    private final RateMeter uploadRate;
+    private long startedNanos;
 
     public SessionStatePrinter() {
+        this("");
+    }
+
+    /**
+     * @param label Prefix for each printed line
+     */
+    public SessionStatePrinter(String label) {
+        this(label, System.out);
+    }
+
+    /**
+     * @param label Prefix for each printed line
+     * @param out Stream to print to
+     */
+    public SessionStatePrinter(String label, PrintStream out) {
+        this(label, out, Options.OutputFormat.TEXT, 0);
+    }
+
+    /**
+     * @param label Prefix for each printed line (text format only)
+     * @param out Stream to print to
+     * @param format Either human-readable text or one JSON object per line
+     * @param jobId ID of the torrent in the JSON output
+     */
+    public SessionStatePrinter(String label, PrintStream out, Options.OutputFormat format, int jobId) {
+        this.label = label;
+        this.out = out;
+        this.format = format;
+        this.jobId = jobId;
+        this.details = new CopyOnWriteArrayList<>();
+        this.line = new StatusLine();
+        this.downloadRate = new RateMeter();
+        this.uploadRate = new RateMeter();
         this.torrent = new AtomicReference<>(null);
         this.sessionState = new AtomicReference<>(null);
         this.processingStage = new AtomicReference<>(ProcessingStage.FETCHING_METADATA);
         this.shutdown = new AtomicBoolean(false);
     }
 
+    /**
+     * Append additional information to each status line.
+     */
+    public void addDetail(StatusDetail detail) {
+        this.details.add(detail);
+    }
+
     public void updateState(TorrentSessionState sessionState) {
         this.sessionState.set(sessionState);
     }
 
     public void onTorrentFetched(Torrent torrent) {
-        System.out.println(String.format("Downloading %s (%,d B)", torrent.getName(), torrent.getSize()));
+        if (format == Options.OutputFormat.TEXT) {
+            out.println(label + String.format("Downloading %s (%,d B)", torrent.getName(), torrent.getSize()));
+        }
         this.torrent.set(torrent);
         this.processingStage.set(ProcessingStage.CHOOSING_FILES);
     }
@@ -63,23 +127,22 @@ public class SessionStatePrinter {
     }
 
     public void start() {
-        this.started = System.currentTimeMillis();
-
-        System.out.println("Fetching metadata... Please wait");
+        // printer may be restarted for a resumed torrent, hence reset everything, that is related to the previous session
+        AtomicBoolean shutdown = new AtomicBoolean(false);
+        this.shutdown = shutdown;
+        this.sessionState.set(null);
+        this.processingStage.set(ProcessingStage.FETCHING_METADATA);
+        this.startedNanos = System.nanoTime();
+        this.downloadRate.reset();
+        this.uploadRate.reset();
+
+        if (format == Options.OutputFormat.TEXT) {
+            out.println(label + "Fetching metadata... Please wait");
+        }
 
         Thread t = new Thread(() -> {
             do {
-                TorrentSessionState sessionState = this.sessionState.get();
-                if (sessionState != null) {
-                    Duration elapsedTime = getElapsedTime();
-                    Rate downloadRate = new Rate(sessionState.getDownloaded() - this.downloaded);
-                    Rate uploadRate = new Rate(sessionState.getUploaded() - this.uploaded);
-
-                    print(torrent.get(), sessionState, processingStage.get(), new Stats(elapsedTime, downloadRate, uploadRate));
-
-                    this.downloaded = sessionState.getDownloaded();
-                    this.uploaded = sessionState.getUploaded();
-                }
+                tick();
                 try {
                     Thread.sleep(1000);
                 } catch (InterruptedException e) {
@@ -91,14 +154,44 @@ public class SessionStatePrinter {
         t.start();
     }
 
-    private Duration getElapsedTime() {
-        return Duration.ofMillis(System.currentTimeMillis() - started);
-    }
+    /**
+     * Print the current state.
+     */
+    void tick() {
+        TorrentSessionState sessionState = this.sessionState.get();
+        long now = System.nanoTime();
+
+        boolean rendered;
+        if (format == Options.OutputFormat.JSON) {
+            if (sessionState != null) {
+                downloadRate.update(sessionState.getDownloaded(), now);
+                uploadRate.update(sessionState.getUploaded(), now);
+            }
+            // JSON is printed in all stages, so that the consumer can see the progress of metadata exchange as well
+            rendered = renderJson(torrent.get(), sessionState, processingStage.get(), now);
+        } else {
+            if (sessionState == null) {
+                return;
+            }
+            downloadRate.update(sessionState.getDownloaded(), now);
+            uploadRate.update(sessionState.getUploaded(), now);
+            rendered = render(torrent.get(), sessionState, processingStage.get(), now);
+        }
 
-    private static final String FORMAT_D = "Downloading from %3d peers... Ready: %.2f%%, Target: %.2f%%,  Down: %s, Up: %s, Elapsed: %s, Remaining: %s";
-    private static final String FORMAT_S = "Download is complete, seeding to %d peers... Up: %s";
+        if (rendered) {
+            try {
+                line.writeTo(out);
+            } catch (IOException e) {
+                // PrintStream never throws
+            }
+        }
+    }
 
-    private static void print(Torrent torrent, TorrentSessionState sessionState, ProcessingStage stage, Stats stats) {
+    // returns false if there is nothing to print in the current stage
+    private boolean render(Torrent torrent, TorrentSessionState sessionState, ProcessingStage stage, long now) {
+        // displayed rates and ETA are smoothed over 10 seconds
+        double downloadRate = this.downloadRate.getRate(RateMeter.Window.TEN_SECONDS);
+        double uploadRate = this.uploadRate.getRate(RateMeter.Window.TEN_SECONDS);
         int peerCount = sessionState.getConnectedPeers().size();
 
         switch (stage) {
@@ -106,33 +199,77 @@ public class SessionStatePrinter {
                 double completePercents = getCompletePercentage(sessionState.getPiecesTotal(), sessionState.getPiecesComplete());
                 double requiredPercents = getTargetPercentage(sessionState.getPiecesTotal(),
                         sessionState.getPiecesComplete(), sessionState.getPiecesRemaining());
-                String down = formatRate(stats.getDownloadRate());
-                String up = formatRate(stats.getUploadRate());
-                String elapsedTime = formatDuration(stats.getElapsedTime());
-                String remainingTime = formatTime(getRemainingTime(torrent.getChunkSize(),
-                        stats.getDownloadRate().getBytes(), sessionState.getPiecesRemaining()));
-
-                System.out.println(String.format(FORMAT_D, peerCount, completePercents, requiredPercents, down, up, elapsedTime, remainingTime));
+                int remainingTime = getRemainingTime(torrent.getChunkSize(), downloadRate, sessionState.getPiecesRemaining());
+                long elapsedTime = TimeUnit.NANOSECONDS.toSeconds(now - startedNanos);
+
+                line.clear().append(label)
+                        .append("Downloading from ").append(peerCount, 3)
+                        .append(" peers... Ready: ").append(completePercents, 2, 0)
+                        .append("%, Target: ").append(requiredPercents, 2, 0)
+                        .append("%,  Down: ");
+                appendRate(downloadRate);
+                line.append(", Up: ");
+                appendRate(uploadRate);
+                line.append(", Elapsed: ").appendDuration(elapsedTime)
+                        .append(", Remaining: ");
+                if (remainingTime < 0) {
+                    line.append(INFINITY);
+                } else {
+                    line.appendDuration(remainingTime);
+                }
                 break;
             }
             case SEEDING: {
-                String up = formatRate(stats.getUploadRate());
-                System.out.println(String.format(FORMAT_S, peerCount, up));
+                line.clear().append(label)
+                        .append("Download is complete, seeding to ").append(peerCount, 0)
+                        .append(" peers... Up: ");
+                appendRate(uploadRate);
                 break;
             }
             default: {
-                // ignore
-                break;
+                return false;
             }
         }
+
+        // indexed loop does not allocate an iterator
+        for (int i = 0; i < details.size(); i++) {
+            details.get(i).appendTo(line.builder());
+        }
+        return true;
     }
 
-    private static String formatTime(int remainingSeconds) {
-        if (remainingSeconds < 0) {
-            return "\u221E"; // infinity
-        } else {
-            return formatDuration(Duration.ofSeconds(remainingSeconds));
+    // fields that are not known yet are omitted
+    private boolean renderJson(Torrent torrent, TorrentSessionState sessionState, ProcessingStage stage, long now) {
+        StringBuilder json = line.clear().builder();
+        json.append("{\"time\":").append(System.currentTimeMillis())
+                .append(",\"job\":").append(jobId)
+                .append(",\"stage\":\"").append(STAGE_NAMES[stage.ordinal()]).append('"')
+                .append(",\"elapsed\":").append(TimeUnit.NANOSECONDS.toSeconds(now - startedNanos));
+        if (torrent != null) {
+            json.append(",\"name\":");
+            Json.appendString(json, torrent.getName());
+            json.append(",\"size\":").append(torrent.getSize());
+        }
+        if (sessionState != null) {
+            double downloadRate = this.downloadRate.getRate(RateMeter.Window.TEN_SECONDS);
+            double uploadRate = this.uploadRate.getRate(RateMeter.Window.TEN_SECONDS);
+            json.append(",\"piecesTotal\":").append(sessionState.getPiecesTotal())
+                    .append(",\"piecesComplete\":").append(sessionState.getPiecesComplete())
+                    .append(",\"piecesRemaining\":").append(sessionState.getPiecesRemaining())
+                    .append(",\"downloaded\":").append(sessionState.getDownloaded())
+                    .append(",\"uploaded\":").append(sessionState.getUploaded())
+                    .append(",\"peers\":").append(sessionState.getConnectedPeers().size());
+            line.append(",\"downRate\":").append(downloadRate, 1, 0)
+                    .append(",\"upRate\":").append(uploadRate, 1, 0);
+            if (torrent != null && stage == ProcessingStage.DOWNLOADING) {
+                int remainingTime = getRemainingTime(torrent.getChunkSize(), downloadRate, sessionState.getPiecesRemaining());
+                if (remainingTime >= 0) {
+                    json.append(",\"eta\":").append(remainingTime);
+                }
+            }
         }
+        json.append('}');
+        return true;
     }
 
     private static double getCompletePercentage(double total, double completed) {
@@ -143,87 +280,28 @@ public class SessionStatePrinter {
         return (completed + remaining) / total * 100;
     }
 
-    private static String formatRate(Rate rate) {
-        return String.format("%5.1f %2s/s", rate.getQuantity(), rate.getMeasureUnit());
+    // same as "%5.1f %2s/s"
+    private void appendRate(double bytesPerSecond) {
+        if (bytesPerSecond < (1 << 10)) {
+            line.append(bytesPerSecond, 1, 5).append("  B/s");
+        } else if (bytesPerSecond < (1 << 20)) {
+            line.append(bytesPerSecond / (1 << 10), 1, 5).append(" KB/s");
+        } else {
+            line.append(bytesPerSecond / (1 << 20), 1, 5).append(" MB/s");
+        }
     }
 
     // returns number of seconds or -1 if the remaining time can't be calculated
-    private static int getRemainingTime(long chunkSize, long downloaded, int piecesRemaining) {
-        if (downloaded == 0) {
+    static int getRemainingTime(long chunkSize, double downloadRate, int piecesRemaining) {
+        // less than a byte per second is considered a stall
+        if (downloadRate < 1) {
             return -1;
         }
         long remainingBytes = chunkSize * piecesRemaining;
-        return (int) (remainingBytes / downloaded);
-    }
-
-    private static String formatDuration(Duration duration) {
-        long seconds = duration.getSeconds();
-        long absSeconds = Math.abs(seconds);
-        String positive = String.format("%d:%02d:%02d", absSeconds / 3600, (absSeconds % 3600) / 60, absSeconds % 60);
-        return seconds < 0 ? "-" + positive : positive;
+        return (int) Math.min(Integer.MAX_VALUE, remainingBytes / downloadRate);
     }
 
     public void stop() {
         shutdown.set(true);
     }
 }
-
-class Stats {
-    private final Duration elapsedTime;
-    private final Rate downloadRate;
-    private final Rate uploadRate;
-
-    public Stats(Duration elapsedTime, Rate downloadRate, Rate uploadRate) {
-        this.elapsedTime = elapsedTime;
-        this.downloadRate = downloadRate;
-        this.uploadRate = uploadRate;
-    }
-
-    public Duration getElapsedTime() {
-        return elapsedTime;
-    }
-
-    public Rate getDownloadRate() {
-        return downloadRate;
-    }
-
-    public Rate getUploadRate() {
-        return uploadRate;
-    }
-}
-
-class Rate {
-    private final double quantity;
-    private final String measureUnit;
-    private final long bytes;
-
-    Rate(long delta) {
-        if (delta < 0) {
-            delta = 0;
-            quantity = 0;
-            measureUnit = "B";
-        } else if (delta < (1 << 10)) {
-            quantity = delta;
-            measureUnit = "B";
-        } else if (delta < (1 << 20)) {
-            quantity = delta / (1 << 10);
-            measureUnit = "KB";
-        } else {
-            quantity = ((double) delta) / (1 << 20);
-            measureUnit = "MB";
-        }
-        bytes = delta;
-    }
-
-    public long getBytes() {
-        return bytes;
-    }
-
-    public double getQuantity() {
-        return quantity;
-    }
-
-    public String getMeasureUnit() {
-        return measureUnit;
-    }
-}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable buffer for rendering a single line of text.
+ *
+ * Numbers are formatted by hand, and the text is encoded into a reusable byte array,
+ * so that rendering and writing a line does not allocate, once the buffers have grown to the line's size.
+ */
+class StatusLine {
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final StringBuilder chars;
+    private byte[] bytes;
+
+    StatusLine() {
+        this.chars = new StringBuilder(256);
+        this.bytes = new byte[512];
+    }
+
+    StatusLine clear() {
+        chars.setLength(0);
+        return this;
+    }
+
+    /**
+     * @return Underlying builder, e.g. for appending {@link StatusDetail}s
+     */
+    StringBuilder builder() {
+        return chars;
+    }
+
+    StatusLine append(CharSequence s) {
+        chars.append(s);
+        return this;
+    }
+
+    StatusLine append(char c) {
+        chars.append(c);
+        return this;
+    }
+
+    StatusLine append(long value) {
+        chars.append(value);
+        return this;
+    }
+
+    /**
+     * Append the value, right-aligned to the given width (like {@code %<width>d})
+     */
+    StatusLine append(long value, int width) {
+        int digits = (value < 0) ? 1 : 0;
+        long v = value;
+        do {
+            digits++;
+            v /= 10;
+        } while (v != 0);
+        pad(width - digits);
+        chars.append(value);
+        return this;
+    }
+
+    /**
+     * Append the value with a fixed number of fraction digits,
+     * right-aligned to the given width (like {@code %<width>.<fractionDigits>f})
+     */
+    StatusLine append(double value, int fractionDigits, int width) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            String s = Double.isNaN(value) ? "NaN" : (value > 0 ? "Infinity" : "-Infinity");
+            pad(width - s.length());
+            chars.append(s);
+            return this;
+        }
+
+        long scale = POWERS_OF_TEN[fractionDigits];
+        long scaled = Math.round(Math.abs(value) * scale);
+        boolean negative = (value < 0) && (scaled != 0);
+        long integral = scaled / scale;
+        long fraction = scaled % scale;
+
+        int length = (negative ? 1 : 0) + digits(integral) + (fractionDigits > 0 ? 1 + fractionDigits : 0);
+        pad(width - length);
+        if (negative) {
+            chars.append('-');
+        }
+        chars.append(integral);
+        if (fractionDigits > 0) {
+            chars.append('.');
+            for (int i = digits(fraction); i < fractionDigits; i++) {
+                chars.append('0');
+            }
+            chars.append(fraction);
+        }
+        return this;
+    }
+
+    /**
+     * Append duration in format {@code h:mm:ss}
+     */
+    StatusLine appendDuration(long seconds) {
+        long absSeconds = Math.abs(seconds);
+        if (seconds < 0) {
+            chars.append('-');
+        }
+        chars.append(absSeconds / 3600).append(':');
+        appendTwoDigits((absSeconds % 3600) / 60);
+        chars.append(':');
+        appendTwoDigits(absSeconds % 60);
+        return this;
+    }
+
+    private void appendTwoDigits(long value) {
+        if (value < 10) {
+            chars.append('0');
+        }
+        chars.append(value);
+    }
+
+    private void pad(int count) {
+        for (int i = 0; i < count; i++) {
+            chars.append(' ');
+        }
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Encode the line in UTF-8 and write it, followed by a line separator, with a single call.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        int length = encode();
+        out.write(bytes, 0, length);
+        out.flush();
+    }
+
+    private int encode() {
+        int maxLength = chars.length() * 3 + LINE_SEPARATOR.length;
+        if (bytes.length < maxLength) {
+            bytes = new byte[Math.max(maxLength, bytes.length * 2)];
+        }
+        int pos = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xC0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // torrent names are printed separately, so only BMP characters are expected here
+                bytes[pos++] = '?';
+            } else {
+                bytes[pos++] = (byte) (0xE0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        for (byte b : LINE_SEPARATOR) {
+            bytes[pos++] = b;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Maps torrent files to locations on disk in the same way as {@link bt.data.file.FileSystemStorage} does,
+ * so that different storage implementations may be used interchangeably for the same download directory.
+ *
+ * Names are normalized like bt's {@code PathNormalizer} does: separators inside a path element create
+ * subdirectories, and each part is trimmed and stripped of trailing dots and spaces (which also turns
+ * "." and ".." into "_"), so that files can't escape the target directory.
+ */
+class StoragePaths {
+
+    /**
+     * Single-file torrents are stored directly in the root directory,
+     * multi-file torrents are stored in a subdirectory, named after the torrent.
+     */
+    static Path getTorrentDirectory(Path rootDirectory, Torrent torrent) {
+        if (torrent.getFiles().size() == 1) {
+            return rootDirectory;
+        }
+        return resolve(rootDirectory, torrent.getName());
+    }
+
+    static Path getFilePath(Path rootDirectory, Torrent torrent, TorrentFile file) {
+        Path path = getTorrentDirectory(rootDirectory, torrent);
+        List<String> pathElements = file.getPathElements();
+        if (pathElements.isEmpty()) {
+            return path.resolve("_");
+        }
+        for (String element : pathElements) {
+            path = resolve(path, element);
+        }
+        return path;
+    }
+
+    private static Path resolve(Path directory, String pathElement) {
+        String separator = directory.getFileSystem().getSeparator();
+        for (String part : pathElement.trim().split(Pattern.quote(separator), -1)) {
+            directory = directory.resolve(normalize(part));
+        }
+        return directory;
+    }
+
+    private static String normalize(String part) {
+        String normalized = part.trim();
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == '.' || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        return (end == 0) ? "_" : normalized.substring(0, end);
+    }
+}
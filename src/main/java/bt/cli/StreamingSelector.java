@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.torrent.PieceStatistics;
+import bt.torrent.selector.BaseStreamSelector;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Selects pieces in a window ahead of the playback cursor first (in order),
+ * and the rest of the pieces in rarest-first order (with random tie-breaking).
+ *
+ * The cursor is advanced automatically past the pieces, that have already been verified,
+ * and may also be moved explicitly with {@link #seek(int)}.
+ */
+class StreamingSelector extends BaseStreamSelector {
+
+    private final int windowSize;
+    private final Supplier<Optional<Bitfield>> bitfieldSupplier;
+    private final AtomicInteger cursor;
+    private final Random random;
+    // pieces at and after the limit are not selected
+    private volatile int limit;
+
+    private volatile Bitfield bitfield;
+
+    /**
+     * @param windowSize Number of high-priority pieces ahead of the cursor
+     * @param bitfieldSupplier Provides the torrent's bitfield, once it becomes available
+     */
+    StreamingSelector(int windowSize, Supplier<Optional<Bitfield>> bitfieldSupplier) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize + "; expected 1 or more");
+        }
+        this.windowSize = windowSize;
+        this.bitfieldSupplier = bitfieldSupplier;
+        this.cursor = new AtomicInteger(0);
+        this.random = new Random();
+        this.limit = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Move the playback cursor to the given piece.
+     */
+    void seek(int pieceIndex) {
+        cursor.set(Math.max(pieceIndex, 0));
+    }
+
+    int getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * Do not select pieces with index equal to or greater than the limit,
+     * e.g. to keep the download from getting too far ahead of a slow consumer.
+     */
+    void setLimit(int pieceIndex) {
+        this.limit = pieceIndex;
+    }
+
+    @Override
+    protected PrimitiveIterator.OfInt createIterator(PieceStatistics pieceStatistics) {
+        // pieces beyond the limit are treated as if they did not exist
+        int piecesTotal = Math.min(pieceStatistics.getPiecesTotal(), limit);
+        int windowStart = advanceCursor(piecesTotal);
+        int windowEnd = (int) Math.min((long) windowStart + windowSize, piecesTotal);
+
+        int[] pieces = new int[piecesTotal];
+        int count = 0;
+        for (int i = windowStart; i < windowEnd; i++) {
+            if (pieceStatistics.getCount(i) > 0) {
+                pieces[count++] = i;
+            }
+        }
+
+        // pack (count, random, index) into a single long, so that sorting does not require boxing
+        long[] rest = new long[piecesTotal];
+        int restCount = 0;
+        for (int i = 0; i < piecesTotal; i++) {
+            if (i >= windowStart && i < windowEnd) {
+                continue;
+            }
+            int availability = pieceStatistics.getCount(i);
+            if (availability > 0) {
+                rest[restCount++] = ((long) Math.min(availability, 0x7FFF) << 48)
+                        | ((long) (random.nextInt() & 0xFFFF) << 32)
+                        | i;
+            }
+        }
+        Arrays.sort(rest, 0, restCount);
+        for (int i = 0; i < restCount; i++) {
+            pieces[count++] = (int) rest[i];
+        }
+
+        return Arrays.stream(pieces, 0, count).iterator();
+    }
+
+    private int advanceCursor(int piecesTotal) {
+        Bitfield bitfield = getBitfield();
+        int position = cursor.get();
+        if (bitfield != null) {
+            int advanced = position;
+            while (advanced < piecesTotal && bitfield.isVerified(advanced)) {
+                advanced++;
+            }
+            if (advanced != position) {
+                // don't override a concurrent seek
+                cursor.compareAndSet(position, advanced);
+                position = advanced;
+            }
+        }
+        return Math.min(position, piecesTotal);
+    }
+
+    private Bitfield getBitfield() {
+        Bitfield bitfield = this.bitfield;
+        if (bitfield == null) {
+            bitfield = bitfieldSupplier.get().orElse(null);
+            this.bitfield = bitfield;
+        }
+        return bitfield;
+    }
+}
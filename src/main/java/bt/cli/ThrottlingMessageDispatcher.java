@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.TorrentId;
+import bt.net.IMessageDispatcher;
+import bt.net.IPeerConnectionPool;
+import bt.net.Peer;
+import bt.net.PeerConnection;
+import bt.protocol.Message;
+import bt.protocol.Piece;
+import bt.protocol.Request;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Enforces bandwidth limits on outgoing messages.
+ *
+ * Uploads are limited by holding back {@link Piece} messages, and downloads are limited
+ * by holding back {@link Request} messages, so that peers don't send us more than we asked for.
+ * A held back message is retried the next time the dispatcher polls the peer's supplier;
+ * as the dispatcher polls peers in a round-robin fashion, the bandwidth is shared fairly among them.
+ */
+class ThrottlingMessageDispatcher implements IMessageDispatcher {
+
+    private final IMessageDispatcher delegate;
+    private final IPeerConnectionPool connectionPool;
+    private final BandwidthLimiter limiter;
+
+    ThrottlingMessageDispatcher(IMessageDispatcher delegate, IPeerConnectionPool connectionPool, BandwidthLimiter limiter) {
+        this.delegate = delegate;
+        this.connectionPool = connectionPool;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void addMessageConsumer(Peer sender, Consumer<Message> messageConsumer) {
+        delegate.addMessageConsumer(sender, messageConsumer);
+    }
+
+    @Override
+    public void addMessageSupplier(Peer recipient, Supplier<Message> messageSupplier) {
+        delegate.addMessageSupplier(recipient, new ThrottledSupplier(recipient, messageSupplier));
+    }
+
+    private class ThrottledSupplier implements Supplier<Message> {
+        private final Peer peer;
+        private final Supplier<Message> delegate;
+
+        // accessed only by the dispatcher thread
+        private Message pending;
+        private TorrentId torrentId;
+
+        ThrottledSupplier(Peer peer, Supplier<Message> delegate) {
+            this.peer = peer;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Message get() {
+            Message message = pending;
+            pending = null;
+            if (message == null) {
+                message = delegate.get();
+            }
+            if (message == null) {
+                return null;
+            }
+
+            if (message instanceof Piece) {
+                if (!limiter.tryAcquire(getTorrentId(), BandwidthLimiter.Direction.UPLOAD, ((Piece) message).getLength())) {
+                    pending = message;
+                    return null;
+                }
+            } else if (message instanceof Request) {
+                if (!limiter.tryAcquire(getTorrentId(), BandwidthLimiter.Direction.DOWNLOAD, ((Request) message).getLength())) {
+                    pending = message;
+                    return null;
+                }
+            }
+            return message;
+        }
+
+        private TorrentId getTorrentId() {
+            if (torrentId == null) {
+                PeerConnection connection = connectionPool.getConnection(peer);
+                if (connection != null) {
+                    torrentId = connection.getTorrentId();
+                }
+            }
+            return torrentId;
+        }
+    }
+}
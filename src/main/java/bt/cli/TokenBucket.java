@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+/**
+ * Token bucket with continuous refill.
+ *
+ * A message may pass, when there are enough tokens for it. Messages larger than the capacity
+ * may pass, when the bucket is full; the balance then becomes negative by less than one message,
+ * and the debt is repaid by the subsequent refills. This way messages of any size pass through
+ * even a very narrow bucket, without exceeding the rate for longer than it takes to send one message.
+ */
+class TokenBucket {
+
+    private final double ratePerNanosecond;
+    private final long capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param rate Tokens per second
+     * @param capacity Maximum number of tokens, that may be accumulated, i.e. the allowed burst
+     */
+    TokenBucket(long rate, long capacity) {
+        if (rate <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Invalid rate (" + rate + ") or capacity (" + capacity + ")");
+        }
+        this.ratePerNanosecond = rate / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    synchronized boolean hasTokens(long amount, long nowNanos) {
+        refill(nowNanos);
+        return tokens >= Math.min(amount, capacity);
+    }
+
+    synchronized void take(long amount, long nowNanos) {
+        refill(nowNanos);
+        tokens -= amount;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * ratePerNanosecond);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
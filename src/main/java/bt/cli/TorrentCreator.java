@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Creates torrent metainfo for a file or a directory.
+ *
+ * Files are read sequentially by a single thread into large direct buffers (one piece per buffer),
+ * and the filled buffers are hashed in parallel in a fork-join pool. The number of buffers is bounded,
+ * so reading stalls, when hashing can't keep up, and memory usage stays constant.
+ */
+class TorrentCreator {
+
+    private static final int MIN_PIECE_SIZE = 16 * 1024;
+    private static final int MAX_PIECE_SIZE = 16 * 1024 * 1024;
+    private static final int TARGET_PIECE_COUNT = 1500;
+    private static final int HASH_LENGTH = 20;
+    // keeps the buffers well below the default MaxDirectMemorySize even with the largest pieces
+    private static final long BUFFER_MEMORY_BUDGET = 256 * 1024 * 1024;
+
+    /**
+     * Choose a power of two piece size, so that the torrent has around 1500 pieces,
+     * within the 16 KiB .. 16 MiB range.
+     */
+    static int getAutoPieceSize(long totalSize) {
+        long pieceSize = MIN_PIECE_SIZE;
+        while (pieceSize < MAX_PIECE_SIZE && totalSize / pieceSize > TARGET_PIECE_COUNT) {
+            pieceSize <<= 1;
+        }
+        return (int) pieceSize;
+    }
+
+    static void checkPieceSize(int pieceSize) {
+        if (pieceSize < MIN_PIECE_SIZE || pieceSize > MAX_PIECE_SIZE || Integer.bitCount(pieceSize) != 1) {
+            throw new IllegalArgumentException("Invalid piece size: " + pieceSize
+                    + "; expected a power of 2 in range " + MIN_PIECE_SIZE + ".." + MAX_PIECE_SIZE);
+        }
+    }
+
+    private final Path source;
+    private final List<Path> files;
+    private final long totalSize;
+    private final int pieceSize;
+    private final int parallelism;
+
+    /**
+     * @param source File or directory
+     * @param pieceSize Piece size or null to choose automatically
+     */
+    TorrentCreator(Path source, Integer pieceSize, int parallelism) throws IOException {
+        this.source = source;
+        this.files = collectFiles(source);
+        long totalSize = 0;
+        for (Path file : files) {
+            totalSize += Files.size(file);
+        }
+        if (totalSize == 0) {
+            throw new IllegalArgumentException("Nothing to share: " + source);
+        }
+        this.totalSize = totalSize;
+        if (pieceSize != null) {
+            checkPieceSize(pieceSize);
+        }
+        this.pieceSize = (pieceSize == null) ? getAutoPieceSize(totalSize) : pieceSize;
+        this.parallelism = parallelism;
+    }
+
+    private static List<Path> collectFiles(Path source) throws IOException {
+        if (Files.isRegularFile(source)) {
+            return Arrays.asList(source);
+        }
+        try (Stream<Path> paths = Files.walk(source)) {
+            // sort to make the result reproducible
+            return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    int getPieceSize() {
+        return pieceSize;
+    }
+
+    long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return Bencoded info dictionary
+     */
+    byte[] createInfo(boolean isPrivate) throws IOException, InterruptedException {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("name", source.getFileName().toString());
+        info.put("piece length", pieceSize);
+        info.put("pieces", hashPieces());
+        if (Files.isRegularFile(source)) {
+            info.put("length", totalSize);
+        } else {
+            List<Object> fileList = new ArrayList<>();
+            for (Path file : files) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("length", Files.size(file));
+                List<Object> pathElements = new ArrayList<>();
+                source.relativize(file).forEach(element -> pathElements.add(element.toString()));
+                entry.put("path", pathElements);
+                fileList.add(entry);
+            }
+            info.put("files", fileList);
+        }
+        if (isPrivate) {
+            info.put("private", 1);
+        }
+        return BencodeWriter.encode(info);
+    }
+
+    private byte[] hashPieces() throws IOException, InterruptedException {
+        int pieceCount = (int) ((totalSize + pieceSize - 1) / pieceSize);
+        byte[] hashes = new byte[pieceCount * HASH_LENGTH];
+
+        // enough buffers to keep all workers busy, while the reader fills the next ones, within the memory budget
+        int bufferCount = (int) Math.min(parallelism * 2, Math.max(2, BUFFER_MEMORY_BUDGET / pieceSize));
+        BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(pieceSize));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(pieceCount);
+        try {
+            int pieceIndex = 0;
+            ByteBuffer buffer = freeBuffers.take();
+            for (Path file : files) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    while (channel.read(buffer) >= 0) {
+                        if (!buffer.hasRemaining()) {
+                            tasks.add(submitHash(pool, buffer, pieceIndex++, hashes, freeBuffers));
+                            buffer = freeBuffers.take();
+                        }
+                    }
+                }
+            }
+            if (buffer.position() > 0) {
+                tasks.add(submitHash(pool, buffer, pieceIndex++, hashes, freeBuffers));
+            }
+            if (pieceIndex != pieceCount) {
+                throw new IllegalStateException("Files have changed while being read");
+            }
+            tasks.forEach(ForkJoinTask::join);
+        } finally {
+            pool.shutdownNow();
+        }
+        return hashes;
+    }
+
+    private static ForkJoinTask<?> submitHash(ForkJoinPool pool, ByteBuffer buffer, int pieceIndex,
+                                              byte[] hashes, BlockingQueue<ByteBuffer> freeBuffers) {
+        buffer.flip();
+        return pool.submit(() -> {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                digest.update(buffer);
+                System.arraycopy(digest.digest(), 0, hashes, pieceIndex * HASH_LENGTH, HASH_LENGTH);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                buffer.clear();
+                freeBuffers.add(buffer);
+            }
+        });
+    }
+
+    /**
+     * @param info Bencoded info dictionary
+     * @param announce Tracker URL or null for trackerless torrents
+     * @return Bencoded metainfo
+     */
+    static byte[] createMetainfo(byte[] info, String announce) {
+        Map<String, Object> metainfo = new LinkedHashMap<>();
+        if (announce != null) {
+            metainfo.put("announce", announce);
+        }
+        metainfo.put("created by", "bt-cli-demo");
+        metainfo.put("creation date", System.currentTimeMillis() / 1000);
+        // info dictionary is written as is, so that the info hash matches the one computed from the same bytes
+        metainfo.put("info", new BencodeWriter.Raw(info));
+        return BencodeWriter.encode(metainfo);
+    }
+}
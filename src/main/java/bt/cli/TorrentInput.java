@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Either a torrent metainfo file or a magnet URI.
+ */
+class TorrentInput {
+    private static final String MAGNET_PREFIX = "magnet:";
+
+    static TorrentInput file(File metainfoFile) {
+        return new TorrentInput(metainfoFile, null);
+    }
+
+    static TorrentInput magnet(String magnetUri) {
+        return new TorrentInput(null, magnetUri);
+    }
+
+    /**
+     * Parse a single entry; magnet URIs are recognized by their scheme,
+     * everything else is treated as a path to a metainfo file.
+     */
+    static TorrentInput parse(String s) {
+        return s.startsWith(MAGNET_PREFIX) ? magnet(s) : file(new File(s));
+    }
+
+    /**
+     * Collect all torrents, that were specified on the command line,
+     * including the contents of the torrent list file, if present.
+     * Empty lines and lines starting with '#' in the list file are ignored.
+     */
+    static List<TorrentInput> fromOptions(Options options) {
+        List<TorrentInput> inputs = new ArrayList<>();
+        options.getMetainfoFiles().forEach(file -> inputs.add(file(file)));
+        options.getMagnetUris().forEach(uri -> inputs.add(magnet(uri)));
+
+        File torrentList = options.getTorrentList();
+        if (torrentList != null) {
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(torrentList.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to read torrent list: " + torrentList, e);
+            }
+            for (String line : lines) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    inputs.add(parse(line));
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private final File metainfoFile;
+    private final String magnetUri;
+
+    private TorrentInput(File metainfoFile, String magnetUri) {
+        this.metainfoFile = metainfoFile;
+        this.magnetUri = magnetUri;
+    }
+
+    /**
+     * @return Metainfo file or null, if this is a magnet URI
+     */
+    File getMetainfoFile() {
+        return metainfoFile;
+    }
+
+    /**
+     * @return Magnet URI or null, if this is a metainfo file
+     */
+    String getMagnetUri() {
+        return magnetUri;
+    }
+
+    @Override
+    public String toString() {
+        return (metainfoFile != null) ? metainfoFile.getPath() : magnetUri;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.Torrent;
+import bt.runtime.BtClient;
+import bt.torrent.TorrentSessionState;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single torrent, managed by {@link TorrentScheduler}.
+ */
+class TorrentJob {
+
+    enum Status {
+        QUEUED, ACTIVE, SEEDING, COMPLETE, PAUSED, REMOVED, FAILED
+    }
+
+    private final int id;
+    private final TorrentInput input;
+    private final SessionStatePrinter printer;
+    private final AtomicReference<Status> status;
+    private final FilePriorities priorities;
+    private volatile BtClient client;
+    private volatile TorrentSessionState sessionState;
+    private volatile Torrent torrent;
+    private volatile StreamingSelector streamingSelector;
+    private final Set<String> skippedFiles;
+
+    TorrentJob(int id, TorrentInput input, SessionStatePrinter printer) {
+        this.id = id;
+        this.input = input;
+        this.printer = printer;
+        this.status = new AtomicReference<>(Status.QUEUED);
+        this.priorities = new FilePriorities();
+        this.skippedFiles = ConcurrentHashMap.newKeySet();
+    }
+
+    int getId() {
+        return id;
+    }
+
+    TorrentInput getInput() {
+        return input;
+    }
+
+    SessionStatePrinter getPrinter() {
+        return printer;
+    }
+
+    FilePriorities getPriorities() {
+        return priorities;
+    }
+
+    Status getStatus() {
+        return status.get();
+    }
+
+    void setStatus(Status status) {
+        this.status.set(status);
+    }
+
+    boolean compareAndSetStatus(Status expected, Status status) {
+        return this.status.compareAndSet(expected, status);
+    }
+
+    /**
+     * @return Client or null, if the job has not been started yet
+     */
+    BtClient getClient() {
+        return client;
+    }
+
+    void setClient(BtClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @return Last known session state or null, if the job has not been started yet
+     */
+    TorrentSessionState getSessionState() {
+        return sessionState;
+    }
+
+    void setSessionState(TorrentSessionState sessionState) {
+        this.sessionState = sessionState;
+    }
+
+    /**
+     * @return Torrent or null, if the metadata has not been fetched yet
+     */
+    Torrent getTorrent() {
+        return torrent;
+    }
+
+    void setTorrent(Torrent torrent) {
+        this.torrent = torrent;
+    }
+
+    /**
+     * @return Selector, that allows to change the download position, or null, if the job does not use one
+     */
+    StreamingSelector getStreamingSelector() {
+        return streamingSelector;
+    }
+
+    void setStreamingSelector(StreamingSelector streamingSelector) {
+        this.streamingSelector = streamingSelector;
+    }
+
+    /**
+     * @param path Path inside the torrent ('/'-separated)
+     * @return true, if the file has been skipped during file selection
+     */
+    boolean isSkipped(String path) {
+        return skippedFiles.contains(path);
+    }
+
+    void addSkippedFile(String path) {
+        skippedFiles.add(path);
+    }
+}
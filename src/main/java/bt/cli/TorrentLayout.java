@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Positions of the torrent's files and pieces in the torrent's contiguous byte space.
+ */
+class TorrentLayout {
+
+    static class FileEntry {
+        private final int index;
+        private final TorrentFile file;
+        private final Path path;
+        private final long offset;
+
+        FileEntry(int index, TorrentFile file, Path path, long offset) {
+            this.index = index;
+            this.file = file;
+            this.path = path;
+            this.offset = offset;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        TorrentFile getFile() {
+            return file;
+        }
+
+        /**
+         * @return Location of the file on disk
+         */
+        Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return Offset of the file's first byte in the torrent
+         */
+        long getOffset() {
+            return offset;
+        }
+
+        long getSize() {
+            return file.getSize();
+        }
+
+        int getFirstPiece(long pieceSize) {
+            return (int) (offset / pieceSize);
+        }
+
+        /**
+         * @return Index of the last piece, that overlaps the file (inclusive), or -1 for empty files
+         */
+        int getLastPiece(long pieceSize) {
+            return (file.getSize() == 0) ? -1 : (int) ((offset + file.getSize() - 1) / pieceSize);
+        }
+    }
+
+    private final Torrent torrent;
+    private final List<FileEntry> files;
+    private final long pieceSize;
+    private final long totalSize;
+    private final int pieceCount;
+
+    TorrentLayout(Torrent torrent, Path rootDirectory) {
+        this.torrent = torrent;
+        this.pieceSize = torrent.getChunkSize();
+
+        List<FileEntry> files = new ArrayList<>();
+        long offset = 0;
+        for (TorrentFile file : torrent.getFiles()) {
+            files.add(new FileEntry(files.size(), file, StoragePaths.getFilePath(rootDirectory, torrent, file), offset));
+            offset += file.getSize();
+        }
+        this.files = Collections.unmodifiableList(files);
+        this.totalSize = offset;
+        this.pieceCount = (int) ((totalSize + pieceSize - 1) / pieceSize);
+    }
+
+    Torrent getTorrent() {
+        return torrent;
+    }
+
+    List<FileEntry> getFiles() {
+        return files;
+    }
+
+    long getPieceSize() {
+        return pieceSize;
+    }
+
+    long getTotalSize() {
+        return totalSize;
+    }
+
+    int getPieceCount() {
+        return pieceCount;
+    }
+
+    long getPieceOffset(int pieceIndex) {
+        return pieceIndex * pieceSize;
+    }
+
+    long getPieceLength(int pieceIndex) {
+        return Math.min(pieceSize, totalSize - getPieceOffset(pieceIndex));
+    }
+
+    /**
+     * @return Index of the first file, that contains data at the given offset in the torrent
+     */
+    int findFile(long torrentOffset) {
+        int low = 0, high = files.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (files.get(mid).getOffset() <= torrentOffset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // skip empty files
+        while (low < files.size() - 1 && files.get(low).getOffset() + files.get(low).getSize() <= torrentOffset) {
+            low++;
+        }
+        return low;
+    }
+}
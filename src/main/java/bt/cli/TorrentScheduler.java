@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.runtime.BtClient;
+import bt.torrent.TorrentSessionState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Runs torrent jobs on a shared runtime, keeping at most a fixed number of them downloading at the same time.
+ * A job frees its slot as soon as the download is complete, even if it continues to seed.
+ */
+class TorrentScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TorrentScheduler.class);
+
+    private static final long STATE_UPDATE_INTERVAL_MILLIS = 1000;
+
+    private final Function<TorrentJob, BtClient> clientFactory;
+    private final int maxActiveTorrents;
+    private final boolean seedAfterDownloaded;
+
+    private final Map<Integer, TorrentJob> jobs;
+    private final Deque<TorrentJob> queue;
+    private final Set<TorrentJob> downloading;
+    private final Set<TorrentJob> running;
+    private final List<BiConsumer<TorrentJob, TorrentSessionState>> stateListeners;
+
+    TorrentScheduler(Function<TorrentJob, BtClient> clientFactory, int maxActiveTorrents, boolean seedAfterDownloaded) {
+        if (maxActiveTorrents < 1) {
+            throw new IllegalArgumentException("Invalid number of active torrents: " + maxActiveTorrents + "; expected 1 or more");
+        }
+        this.clientFactory = clientFactory;
+        this.maxActiveTorrents = maxActiveTorrents;
+        this.seedAfterDownloaded = seedAfterDownloaded;
+        this.jobs = new LinkedHashMap<>();
+        this.queue = new ArrayDeque<>();
+        this.downloading = new HashSet<>();
+        this.running = new HashSet<>();
+        this.stateListeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Add a listener, that will be notified about each session state update of each job.
+     */
+    void addStateListener(BiConsumer<TorrentJob, TorrentSessionState> listener) {
+        stateListeners.add(listener);
+    }
+
+    synchronized void submit(TorrentJob job) {
+        if (jobs.putIfAbsent(job.getId(), job) != null) {
+            throw new IllegalStateException("Duplicate job ID: " + job.getId());
+        }
+        queue.add(job);
+        schedule();
+    }
+
+    synchronized Optional<TorrentJob> getJob(int id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    synchronized List<TorrentJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Stop the job, but keep it, so that it could be resumed later.
+     *
+     * @return true if the job was queued or running
+     */
+    synchronized boolean pause(int id) {
+        TorrentJob job = jobs.get(id);
+        return job != null && stop(job, TorrentJob.Status.PAUSED);
+    }
+
+    /**
+     * Put a paused job back into the queue.
+     *
+     * @return true if the job was paused
+     */
+    synchronized boolean resume(int id) {
+        TorrentJob job = jobs.get(id);
+        if (job == null || !job.compareAndSetStatus(TorrentJob.Status.PAUSED, TorrentJob.Status.QUEUED)) {
+            return false;
+        }
+        queue.add(job);
+        schedule();
+        return true;
+    }
+
+    /**
+     * Stop the job and forget about it.
+     *
+     * @return true if the job existed
+     */
+    synchronized boolean remove(int id) {
+        TorrentJob job = jobs.remove(id);
+        if (job == null) {
+            return false;
+        }
+        stop(job, TorrentJob.Status.REMOVED);
+        return true;
+    }
+
+    /**
+     * Stop all jobs.
+     */
+    synchronized void shutdown() {
+        queue.clear();
+        new ArrayList<>(running).forEach(job -> stop(job, TorrentJob.Status.REMOVED));
+        notifyAll();
+    }
+
+    /**
+     * Block until all submitted jobs have stopped.
+     */
+    synchronized void awaitTermination() throws InterruptedException {
+        while (!queue.isEmpty() || !running.isEmpty()) {
+            wait();
+        }
+    }
+
+    private boolean stop(TorrentJob job, TorrentJob.Status status) {
+        if (queue.remove(job)) {
+            job.setStatus(status);
+            notifyAll();
+            return true;
+        } else if (running.contains(job)) {
+            job.setStatus(status);
+            job.getClient().stop();
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void schedule() {
+        while (downloading.size() < maxActiveTorrents && !queue.isEmpty()) {
+            TorrentJob job = queue.poll();
+            downloading.add(job);
+            running.add(job);
+            start(job);
+        }
+        notifyAll();
+    }
+
+    private void start(TorrentJob job) {
+        BtClient client;
+        try {
+            client = clientFactory.apply(job);
+        } catch (Exception e) {
+            LOGGER.error("Failed to create client for torrent: " + job.getInput(), e);
+            job.setStatus(TorrentJob.Status.FAILED);
+            onStopped(job);
+            return;
+        }
+
+        job.setClient(client);
+        job.setStatus(TorrentJob.Status.ACTIVE);
+        job.getPrinter().start();
+
+        client.startAsync(state -> onStateUpdate(job, state), STATE_UPDATE_INTERVAL_MILLIS)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        LOGGER.error("Unexpected error when processing torrent: " + job.getInput(), e);
+                        job.setStatus(TorrentJob.Status.FAILED);
+                    }
+                    job.getPrinter().stop();
+                    onStopped(job);
+                });
+    }
+
+    private void onStateUpdate(TorrentJob job, TorrentSessionState state) {
+        job.setSessionState(state);
+        stateListeners.forEach(listener -> listener.accept(job, state));
+
+        SessionStatePrinter printer = job.getPrinter();
+        boolean complete = (state.getPiecesRemaining() == 0);
+        if (complete) {
+            if (seedAfterDownloaded) {
+                if (job.compareAndSetStatus(TorrentJob.Status.ACTIVE, TorrentJob.Status.SEEDING)) {
+                    printer.onDownloadComplete();
+                    release(job);
+                }
+            } else if (job.compareAndSetStatus(TorrentJob.Status.ACTIVE, TorrentJob.Status.COMPLETE)) {
+                printer.stop();
+                job.getClient().stop();
+            }
+        }
+        printer.updateState(state);
+    }
+
+    private synchronized void release(TorrentJob job) {
+        if (downloading.remove(job)) {
+            schedule();
+        }
+    }
+
+    private synchronized void onStopped(TorrentJob job) {
+        running.remove(job);
+        downloading.remove(job);
+        schedule();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.data.StorageUnit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Copies a range of a torrent file to an output stream, waiting for each piece to be downloaded and verified
+ * before its data is read from the storage.
+ */
+class VerifiedDataReader {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private final TorrentLayout layout;
+    private final Supplier<Optional<Bitfield>> bitfieldSupplier;
+    private final BooleanSupplier cancelled;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param cancelled Checked while waiting for a piece; waiting is aborted, once it returns true
+     */
+    VerifiedDataReader(TorrentLayout layout, Supplier<Optional<Bitfield>> bitfieldSupplier, BooleanSupplier cancelled) {
+        this.layout = layout;
+        this.bitfieldSupplier = bitfieldSupplier;
+        this.cancelled = cancelled;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * @param from Offset of the first byte in the file (inclusive)
+     * @param to Offset of the last byte in the file (exclusive)
+     * @param pieceConsumed Invoked with piece index after the part of the piece within the range has been written
+     * @throws InterruptedIOException if interrupted or cancelled while waiting for a piece
+     * @throws IOException if the storage returns less data than expected
+     */
+    void copy(StorageUnit unit, TorrentLayout.FileEntry file, long from, long to,
+              OutputStream out, IntConsumer pieceConsumed) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        long pieceSize = layout.getPieceSize();
+        int firstPiece = (int) ((file.getOffset() + from) / pieceSize);
+        int lastPiece = (int) ((file.getOffset() + to - 1) / pieceSize);
+
+        for (int piece = firstPiece; piece <= lastPiece; piece++) {
+            awaitVerified(piece);
+
+            // part of the range, that is inside the piece, in file coordinates
+            long start = Math.max(layout.getPieceOffset(piece) - file.getOffset(), from);
+            long end = Math.min(layout.getPieceOffset(piece) + layout.getPieceLength(piece) - file.getOffset(), to);
+            for (long position = start; position < end; ) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = unit.readBlock(buffer, position);
+                if (read <= 0) {
+                    // the piece has been verified, so the data must be there
+                    throw new IOException("Unexpected end of data at offset " + position
+                            + " in file: " + file.getPath());
+                }
+                out.write(buffer.array(), 0, read);
+                position += read;
+            }
+            pieceConsumed.accept(piece);
+        }
+    }
+
+    private void awaitVerified(int piece) throws InterruptedIOException {
+        Bitfield bitfield = null;
+        while (true) {
+            if (bitfield == null) {
+                bitfield = bitfieldSupplier.get().orElse(null);
+            }
+            if (bitfield != null && bitfield.isVerified(piece)) {
+                return;
+            } else if (cancelled.getAsBoolean()) {
+                throw new InterruptedIOException("Cancelled while waiting for piece " + piece);
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for piece " + piece);
+            }
+        }
+    }
+}
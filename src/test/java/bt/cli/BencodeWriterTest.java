@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class BencodeWriterTest {
+
+    @Test
+    public void testScalars() {
+        assertEncoded("i42e", 42);
+        assertEncoded("i-1e", -1L);
+        assertEncoded("i0e", 0);
+        assertEncoded("4:spam", "spam");
+        assertEncoded("0:", "");
+        assertEncoded("3:abc", "abc".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testString_LengthInBytes() {
+        assertEncoded("2:\u00E9", "\u00E9");
+    }
+
+    @Test
+    public void testList() {
+        assertEncoded("l4:spami42ee", Arrays.asList("spam", 42));
+        assertEncoded("le", Collections.emptyList());
+    }
+
+    @Test
+    public void testDictionary_SortedKeys() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("spam", Arrays.asList("a", "b"));
+        map.put("cow", "moo");
+        map.put("co", 1);
+        assertEncoded("d2:coi1e3:cow3:moo4:spaml1:a1:bee", map);
+    }
+
+    @Test
+    public void testDictionary_KeysSortedByUtf8Bytes() {
+        // in UTF-16 the surrogate pair (D83D DE00) sorts before U+FFFD, in UTF-8 (F0 .. vs EF ..) it's the other way round
+        Map<String, Object> map = new HashMap<>();
+        map.put("\uD83D\uDE00", 1);
+        map.put("\uFFFD", 2);
+        assertEncoded("d3:\uFFFDi2e4:\uD83D\uDE00i1ee", map);
+    }
+
+    @Test
+    public void testRaw() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("info", new BencodeWriter.Raw("d1:ai1ee".getBytes(StandardCharsets.US_ASCII)));
+        assertEncoded("d4:infod1:ai1eee", map);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonStringKey() {
+        BencodeWriter.encode(Collections.singletonMap(1, "a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedType() {
+        BencodeWriter.encode(1.5);
+    }
+
+    private static void assertEncoded(String expected, Object value) {
+        assertEquals(expected, new String(BencodeWriter.encode(value), StandardCharsets.UTF_8));
+    }
+}
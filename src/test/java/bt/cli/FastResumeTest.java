@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FastResumeTest {
+
+    @Test
+    public void testState_RoundTrip() throws IOException {
+        BitSet verified = new BitSet();
+        verified.set(0);
+        verified.set(63);
+        verified.set(64);
+        verified.set(129);
+        FastResume.State state = new FastResume.State(130, verified,
+                new long[]{1L << 33, -1}, new long[]{1_500_000_000_123L, -1});
+
+        FastResume.State restored = FastResume.State.readFrom(toInput(write(state)));
+
+        assertEquals(130, restored.getChunkCount());
+        assertEquals(verified, restored.getVerified());
+        assertArrayEquals(new long[]{1L << 33, -1}, restored.getFileSizes());
+        assertArrayEquals(new long[]{1_500_000_000_123L, -1}, restored.getFileModificationTimes());
+    }
+
+    @Test
+    public void testState_NothingVerified() throws IOException {
+        FastResume.State state = new FastResume.State(10, new BitSet(), new long[]{0}, new long[]{0});
+
+        FastResume.State restored = FastResume.State.readFrom(toInput(write(state)));
+
+        assertEquals(10, restored.getChunkCount());
+        assertEquals(0, restored.getVerified().cardinality());
+    }
+
+    @Test
+    public void testState_UnknownFormat() throws IOException {
+        byte[] data = write(new FastResume.State(10, new BitSet(), new long[0], new long[0]));
+        data[0] ^= 1;
+        assertNull(FastResume.State.readFrom(toInput(data)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testState_Truncated() throws IOException {
+        BitSet verified = new BitSet();
+        verified.set(5);
+        byte[] data = write(new FastResume.State(10, verified, new long[]{1}, new long[]{1}));
+        byte[] truncated = new byte[data.length - 4];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        FastResume.State.readFrom(toInput(truncated));
+    }
+
+    private static byte[] write(FastResume.State state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            state.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream toInput(byte[] data) {
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+}
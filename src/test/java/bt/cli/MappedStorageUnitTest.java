@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MappedStorageUnitTest {
+
+    private static final long REGION_SIZE = 64 * 1024;
+
+    @Test
+    public void testRead_MissingFile() throws IOException {
+        Path directory = Files.createTempDirectory("bt-cli-test");
+        try {
+            Path file = directory.resolve("a").resolve("missing.bin");
+            MappedStorageUnit unit = new MappedStorageUnit(file, 3 * REGION_SIZE, REGION_SIZE, Options.Preallocation.FULL);
+            try {
+                assertEquals(-1, unit.readBlock(ByteBuffer.allocate(1024), 0));
+                assertFalse(Files.exists(file));
+                assertFalse(Files.exists(file.getParent()));
+            } finally {
+                unit.close();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRead_DoesNotExtendFile() throws IOException {
+        Path directory = Files.createTempDirectory("bt-cli-test");
+        try {
+            Path file = directory.resolve("partial.bin");
+            byte[] data = new byte[1000];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) i;
+            }
+            Files.write(file, data);
+            MappedStorageUnit unit = new MappedStorageUnit(file, 3 * REGION_SIZE, REGION_SIZE, Options.Preallocation.FULL);
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(2000);
+                assertEquals(1000, unit.readBlock(buffer, 0));
+                byte[] read = new byte[1000];
+                buffer.flip();
+                buffer.get(read);
+                assertArrayEquals(data, read);
+                assertEquals(-1, unit.readBlock(ByteBuffer.allocate(10), 2 * REGION_SIZE));
+                assertEquals(1000, Files.size(file));
+            } finally {
+                unit.close();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testWriteThenRead() throws IOException {
+        Path directory = Files.createTempDirectory("bt-cli-test");
+        try {
+            Path file = directory.resolve("a").resolve("written.bin");
+            MappedStorageUnit unit = new MappedStorageUnit(file, 3 * REGION_SIZE, REGION_SIZE, Options.Preallocation.FULL);
+            try {
+                // crosses the boundary of the first two regions
+                byte[] data = new byte[]{1, 2, 3, 4};
+                unit.writeBlock(ByteBuffer.wrap(data), REGION_SIZE - 2);
+                assertEquals(3 * REGION_SIZE, Files.size(file));
+
+                byte[] read = new byte[4];
+                assertEquals(4, unit.readBlock(ByteBuffer.wrap(read), REGION_SIZE - 2));
+                assertArrayEquals(data, read);
+            } finally {
+                unit.close();
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetadataCacheTest {
+
+    private static final String INFO_HASH = "c12fe1c06bba254a9dc9f519b335aa7c1367a88a";
+
+    @Test
+    public void testParseInfoHash_Hex() {
+        assertEquals(Optional.of(INFO_HASH),
+                MetadataCache.parseInfoHash("magnet:?xt=urn:btih:" + INFO_HASH + "&dn=test"));
+    }
+
+    @Test
+    public void testParseInfoHash_HexUpperCase() {
+        assertEquals(Optional.of(INFO_HASH),
+                MetadataCache.parseInfoHash("magnet:?xt=URN:BTIH:C12FE1C06BBA254A9DC9F519B335AA7C1367A88A"));
+    }
+
+    @Test
+    public void testParseInfoHash_Base32() {
+        assertEquals(Optional.of(INFO_HASH),
+                MetadataCache.parseInfoHash("magnet:?xt=urn:btih:YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKEK"));
+    }
+
+    @Test
+    public void testParseInfoHash_Base32LowerCase() {
+        assertEquals(Optional.of(INFO_HASH),
+                MetadataCache.parseInfoHash("magnet:?xt=urn:btih:yex6dqdlxisuvhoj6um3gnnkpqjwpkek"));
+    }
+
+    @Test
+    public void testParseInfoHash_NumberedParameter() {
+        assertEquals(Optional.of(INFO_HASH),
+                MetadataCache.parseInfoHash("magnet:?dn=test&xt.1=urn:sha1:ABC&xt.2=urn:btih:" + INFO_HASH));
+    }
+
+    @Test
+    public void testParseInfoHash_InvalidBase32() {
+        assertEquals(Optional.empty(),
+                MetadataCache.parseInfoHash("magnet:?xt=urn:btih:YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKE1"));
+    }
+
+    @Test
+    public void testParseInfoHash_InvalidLength() {
+        assertEquals(Optional.empty(), MetadataCache.parseInfoHash("magnet:?xt=urn:btih:c12fe1c06bba"));
+    }
+
+    @Test
+    public void testParseInfoHash_NoInfoHash() {
+        assertEquals(Optional.empty(), MetadataCache.parseInfoHash("magnet:?dn=test&tr=http://tracker"));
+        assertEquals(Optional.empty(), MetadataCache.parseInfoHash("magnet:"));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RuleFileSelectorTest {
+
+    @Test
+    public void testParseSize() {
+        assertEquals(0, RuleFileSelector.parseSize("0"));
+        assertEquals(1500, RuleFileSelector.parseSize("1500"));
+        assertEquals(10 * 1024, RuleFileSelector.parseSize("10K"));
+        assertEquals(700L * 1024 * 1024, RuleFileSelector.parseSize("700m"));
+        assertEquals(4L << 30, RuleFileSelector.parseSize(" 4G "));
+        assertEquals(2L << 40, RuleFileSelector.parseSize("2T"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseSize_Negative() {
+        RuleFileSelector.parseSize("-1K");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseSize_Overflow() {
+        RuleFileSelector.parseSize("8388608T");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseSize_UnknownSuffix() {
+        RuleFileSelector.parseSize("10X");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseSize_Empty() {
+        RuleFileSelector.parseSize("");
+    }
+
+    @Test
+    public void testCompilePattern_FileNameInAnyDirectory() {
+        Pattern pattern = RuleFileSelector.compilePattern("*.mkv");
+        assertTrue(matches(pattern, "movie.mkv"));
+        assertTrue(matches(pattern, "a/b/movie.mkv"));
+        assertFalse(matches(pattern, "movie.mkv.part"));
+        assertFalse(matches(pattern, "movie_mkv"));
+    }
+
+    @Test
+    public void testCompilePattern_Path() {
+        Pattern pattern = RuleFileSelector.compilePattern("extras/*");
+        assertTrue(matches(pattern, "extras/trailer.mp4"));
+        assertFalse(matches(pattern, "extras/deleted/scene.mp4"));
+        assertFalse(matches(pattern, "season1/extras/trailer.mp4"));
+    }
+
+    @Test
+    public void testCompilePattern_AnyDepth() {
+        Pattern pattern = RuleFileSelector.compilePattern("**/sample/*");
+        assertTrue(matches(pattern, "sample/a.mkv"));
+        assertTrue(matches(pattern, "x/y/sample/a.mkv"));
+        assertFalse(matches(pattern, "samples/a.mkv"));
+    }
+
+    @Test
+    public void testCompilePattern_QuestionMark() {
+        Pattern pattern = RuleFileSelector.compilePattern("cd?/track.flac");
+        assertTrue(matches(pattern, "cd1/track.flac"));
+        assertFalse(matches(pattern, "cd/track.flac"));
+        assertFalse(matches(pattern, "cd//track.flac"));
+    }
+
+    @Test
+    public void testCompilePattern_Group() {
+        Pattern pattern = RuleFileSelector.compilePattern("*.{mkv,mp4}");
+        assertTrue(matches(pattern, "a.mkv"));
+        assertTrue(matches(pattern, "a.mp4"));
+        assertFalse(matches(pattern, "a.avi"));
+        assertTrue(matches(RuleFileSelector.compilePattern("a,b.txt"), "a,b.txt"));
+        assertTrue(matches(RuleFileSelector.compilePattern("a}.txt"), "a}.txt"));
+    }
+
+    @Test
+    public void testCompilePattern_NestedGroups() {
+        Pattern pattern = RuleFileSelector.compilePattern("*.{mkv,{mp,m4}4}");
+        assertTrue(matches(pattern, "a.mkv"));
+        assertTrue(matches(pattern, "a.mp4"));
+        assertTrue(matches(pattern, "a.m44"));
+        assertFalse(matches(pattern, "a.mp"));
+        assertFalse(matches(pattern, "a.4"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompilePattern_UnterminatedGroup() {
+        RuleFileSelector.compilePattern("*.{mkv,{mp4}");
+    }
+
+    @Test
+    public void testCompilePattern_CharacterClass() {
+        Pattern pattern = RuleFileSelector.compilePattern("part[0-9].rar");
+        assertTrue(matches(pattern, "part1.rar"));
+        assertFalse(matches(pattern, "partx.rar"));
+        assertFalse(matches(pattern, "part[0-9].rar"));
+    }
+
+    @Test
+    public void testCompilePattern_NegatedCharacterClass() {
+        Pattern pattern = RuleFileSelector.compilePattern("dir[!0-9]/*");
+        assertTrue(matches(pattern, "dirx/a"));
+        assertFalse(matches(pattern, "dir1/a"));
+        assertFalse(matches(pattern, "dir//a"));
+        assertTrue(matches(RuleFileSelector.compilePattern("[^a]"), "b"));
+        assertFalse(matches(RuleFileSelector.compilePattern("[^a]"), "a"));
+    }
+
+    @Test
+    public void testCompilePattern_CharacterClassSpecialCharacters() {
+        Pattern pattern = RuleFileSelector.compilePattern("[]^&[]");
+        assertTrue(matches(pattern, "]"));
+        assertTrue(matches(pattern, "^"));
+        assertTrue(matches(pattern, "&"));
+        assertTrue(matches(pattern, "["));
+        assertFalse(matches(pattern, "a"));
+    }
+
+    @Test
+    public void testCompilePattern_UnterminatedCharacterClass() {
+        assertTrue(matches(RuleFileSelector.compilePattern("a[b"), "a[b"));
+    }
+
+    @Test
+    public void testCompilePattern_Regex() {
+        Pattern pattern = RuleFileSelector.compilePattern("re:.*S0[1-3]E\\d+\\.mkv");
+        assertTrue(matches(pattern, "show/S02E10.mkv"));
+        assertFalse(matches(pattern, "show/S04E10.mkv"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompilePattern_InvalidRegex() {
+        RuleFileSelector.compilePattern("re:(");
+    }
+
+    private static boolean matches(Pattern pattern, String path) {
+        return pattern.matcher(path).matches();
+    }
+}
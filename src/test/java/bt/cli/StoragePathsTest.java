@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.StorageUnit;
+import bt.data.file.FileSystemStorage;
+import bt.metainfo.Torrent;
+import bt.metainfo.TorrentFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class StoragePathsTest {
+
+    private static final Path ROOT = Paths.get("downloads");
+
+    @Test
+    public void testSingleFile() {
+        TorrentFile file = file("movie.mkv");
+        assertEquals(ROOT.resolve("movie.mkv"), StoragePaths.getFilePath(ROOT, torrent("movie", file), file));
+    }
+
+    @Test
+    public void testMultiFile() {
+        TorrentFile file = file("season 1", "e01.mkv");
+        Torrent torrent = torrent("series", file, file("e02.mkv"));
+        assertEquals(ROOT.resolve("series").resolve("season 1").resolve("e01.mkv"),
+                StoragePaths.getFilePath(ROOT, torrent, file));
+    }
+
+    @Test
+    public void testRelativeNames() {
+        TorrentFile file = file("..", ".", "a.bin");
+        Torrent torrent = torrent("..", file, file("b.bin"));
+        assertEquals(ROOT.resolve("_").resolve("_").resolve("_").resolve("a.bin"),
+                StoragePaths.getFilePath(ROOT, torrent, file));
+    }
+
+    @Test
+    public void testTrailingDotsAndWhitespace() {
+        TorrentFile file = file(" dir. ", "a.bin. \t");
+        Torrent torrent = torrent(" name ", file, file("b.bin"));
+        assertEquals(ROOT.resolve("name").resolve("dir").resolve("a.bin"),
+                StoragePaths.getFilePath(ROOT, torrent, file));
+    }
+
+    @Test
+    public void testSeparatorsInsideElements() {
+        String separator = ROOT.getFileSystem().getSeparator();
+        TorrentFile file = file(separator + "a" + separator + separator + "b" + separator, "../c.bin");
+        Torrent torrent = torrent("x", file, file("y"));
+        Path expected = ROOT.resolve("x").resolve("_").resolve("a").resolve("_").resolve("b").resolve("_");
+        expected = "/".equals(separator)
+                ? expected.resolve("_").resolve("c.bin")
+                : expected.resolve("../c.bin");
+        assertEquals(expected, StoragePaths.getFilePath(ROOT, torrent, file));
+    }
+
+    @Test
+    public void testEmptyElements() {
+        TorrentFile file = file("", "  ");
+        Torrent torrent = torrent("", file, file("b.bin"));
+        assertEquals(ROOT.resolve("_").resolve("_").resolve("_"), StoragePaths.getFilePath(ROOT, torrent, file));
+    }
+
+    @Test
+    public void testSameLocationsAsFileSystemStorage() throws IOException {
+        List<TorrentFile> files = Arrays.asList(
+                file("plain.bin"),
+                file(" dir. ", "a.bin. "),
+                file("..", ".", "b.bin"),
+                file("x/y", "c.bin"),
+                file("", "d.bin"));
+        for (String name : Arrays.asList("name", " name. ", "..")) {
+            Torrent torrent = torrent(name, files.toArray(new TorrentFile[0]));
+            for (TorrentFile file : files) {
+                assertSameLocation(torrent, file);
+            }
+        }
+        TorrentFile single = file(" single.bin. ");
+        assertSameLocation(torrent("single", single), single);
+    }
+
+    private static void assertSameLocation(Torrent torrent, TorrentFile file) throws IOException {
+        Path directory = Files.createTempDirectory("bt-cli-test");
+        try {
+            StorageUnit unit = new FileSystemStorage(directory).getUnit(torrent, file);
+            try {
+                unit.writeBlock(new byte[]{1}, 0);
+            } finally {
+                unit.close();
+            }
+            List<Path> created;
+            try (Stream<Path> paths = Files.walk(directory)) {
+                created = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            assertEquals(Arrays.asList(StoragePaths.getFilePath(directory, torrent, file)), created);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static TorrentFile file(String... pathElements) {
+        List<String> elements = Arrays.asList(pathElements);
+        return (TorrentFile) Proxy.newProxyInstance(StoragePathsTest.class.getClassLoader(),
+                new Class<?>[]{TorrentFile.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPathElements": {
+                            return elements;
+                        }
+                        case "getSize": {
+                            return 1L;
+                        }
+                        default: {
+                            return defaultValue(proxy, method.getName(), args);
+                        }
+                    }
+                });
+    }
+
+    private static Torrent torrent(String name, TorrentFile... files) {
+        List<TorrentFile> fileList = new ArrayList<>(Arrays.asList(files));
+        return (Torrent) Proxy.newProxyInstance(StoragePathsTest.class.getClassLoader(),
+                new Class<?>[]{Torrent.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getName": {
+                            return name;
+                        }
+                        case "getFiles": {
+                            return fileList;
+                        }
+                        case "getSize": {
+                            return (long) fileList.size();
+                        }
+                        case "getChunkSize": {
+                            return 16384L;
+                        }
+                        default: {
+                            return defaultValue(proxy, method.getName(), args);
+                        }
+                    }
+                });
+    }
+
+    // identity semantics for Object methods, nothing else is needed to resolve file locations
+    private static Object defaultValue(Object proxy, String methodName, Object[] args) {
+        switch (methodName) {
+            case "equals": {
+                return proxy == args[0];
+            }
+            case "hashCode": {
+                return System.identityHashCode(proxy);
+            }
+            case "toString": {
+                return "proxy@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            default: {
+                throw new UnsupportedOperationException(methodName);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import bt.data.Bitfield;
+import bt.torrent.PieceStatistics;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StreamingSelectorTest {
+
+    private static class Statistics implements PieceStatistics {
+        private final int[] counts;
+
+        Statistics(int... counts) {
+            this.counts = counts;
+        }
+
+        @Override
+        public int getCount(int pieceIndex) {
+            return counts[pieceIndex];
+        }
+
+        @Override
+        public int getPiecesTotal() {
+            return counts.length;
+        }
+    }
+
+    @Test
+    public void testWindowInOrder_ThenRarestFirst() {
+        StreamingSelector selector = new StreamingSelector(3, Optional::empty);
+        Statistics statistics = new Statistics(5, 5, 5, 4, 1, 3, 2);
+        assertArrayEquals(new int[]{0, 1, 2, 4, 6, 5, 3}, select(selector, statistics));
+    }
+
+    @Test
+    public void testUnavailablePiecesSkipped() {
+        StreamingSelector selector = new StreamingSelector(3, Optional::empty);
+        Statistics statistics = new Statistics(1, 0, 1, 0, 1);
+        assertArrayEquals(new int[]{0, 2, 4}, select(selector, statistics));
+    }
+
+    @Test
+    public void testSeek() {
+        StreamingSelector selector = new StreamingSelector(2, Optional::empty);
+        selector.seek(3);
+        Statistics statistics = new Statistics(1, 2, 3, 4, 4, 4);
+        assertArrayEquals(new int[]{3, 4, 0, 1, 2, 5}, select(selector, statistics));
+    }
+
+    @Test
+    public void testSeek_PastEnd() {
+        StreamingSelector selector = new StreamingSelector(2, Optional::empty);
+        selector.seek(10);
+        Statistics statistics = new Statistics(2, 1);
+        assertArrayEquals(new int[]{1, 0}, select(selector, statistics));
+    }
+
+    @Test
+    public void testLimit() {
+        StreamingSelector selector = new StreamingSelector(2, Optional::empty);
+        selector.setLimit(3);
+        Statistics statistics = new Statistics(1, 1, 1, 1, 1);
+        assertArrayEquals(new int[]{0, 1, 2}, select(selector, statistics));
+    }
+
+    @Test
+    public void testCursorAdvancesPastVerifiedPieces() {
+        Bitfield bitfield = new Bitfield(5);
+        bitfield.markVerified(0);
+        bitfield.markVerified(1);
+        StreamingSelector selector = new StreamingSelector(2, () -> Optional.of(bitfield));
+        Statistics statistics = new Statistics(1, 1, 1, 1, 1);
+
+        assertEquals(2, select(selector, statistics)[0]);
+        assertEquals(2, selector.getCursor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindowSize() {
+        new StreamingSelector(0, Optional::empty);
+    }
+
+    private static int[] select(StreamingSelector selector, PieceStatistics statistics) {
+        PrimitiveIterator.OfInt iterator = selector.createIterator(statistics);
+        IntStream.Builder pieces = IntStream.builder();
+        iterator.forEachRemaining((int piece) -> pieces.add(piece));
+        return pieces.build().toArray();
+    }
+}
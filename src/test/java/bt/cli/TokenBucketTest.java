@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    // bucket is created after this point in time, so that there is no refill until the first tick
+    private final long start = System.nanoTime();
+
+    @Test
+    public void testTake() {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+        assertTrue(bucket.hasTokens(600, start));
+        bucket.take(600, start);
+        assertFalse(bucket.hasTokens(600, start));
+        assertTrue(bucket.hasTokens(400, start));
+    }
+
+    @Test
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+        bucket.take(1000, start);
+        assertFalse(bucket.hasTokens(500, start + millis(400)));
+        assertTrue(bucket.hasTokens(500, start + millis(600)));
+    }
+
+    @Test
+    public void testRefill_UpToCapacity() {
+        TokenBucket bucket = new TokenBucket(1000, 2000);
+        bucket.take(2000, start);
+        assertTrue(bucket.hasTokens(2000, start + millis(10_000)));
+        bucket.take(2000, start + millis(10_000));
+        assertFalse(bucket.hasTokens(1, start + millis(10_000)));
+    }
+
+    @Test
+    public void testMessageLargerThanCapacity() {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+        // passes only when the bucket is full
+        bucket.take(1, start);
+        assertFalse(bucket.hasTokens(5000, start));
+        assertTrue(bucket.hasTokens(5000, start + millis(2)));
+
+        // the debt is repaid before anything else may pass
+        bucket.take(5000, start + millis(2));
+        assertFalse(bucket.hasTokens(1, start + millis(3900)));
+        assertTrue(bucket.hasTokens(1, start + millis(4100)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new TokenBucket(0, 1000);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018 Andrei Tomashpolskiy.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bt.cli;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TorrentCreatorTest {
+
+    @Test
+    public void testAutoPieceSize() {
+        assertEquals(16 * 1024, TorrentCreator.getAutoPieceSize(0));
+        assertEquals(16 * 1024, TorrentCreator.getAutoPieceSize(1500L * 16 * 1024));
+        assertEquals(32 * 1024, TorrentCreator.getAutoPieceSize(1500L * 16 * 1024 + 16 * 1024));
+        assertEquals(4 * 1024 * 1024, TorrentCreator.getAutoPieceSize(4L * 1024 * 1024 * 1024));
+        assertEquals(16 * 1024 * 1024, TorrentCreator.getAutoPieceSize(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testCheckPieceSize() {
+        TorrentCreator.checkPieceSize(16 * 1024);
+        TorrentCreator.checkPieceSize(16 * 1024 * 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheckPieceSize_NotPowerOfTwo() {
+        TorrentCreator.checkPieceSize(3 * 16 * 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheckPieceSize_TooSmall() {
+        TorrentCreator.checkPieceSize(8 * 1024);
+    }
+}